@@ -0,0 +1,91 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Shared fixtures for the benchmarks - an in-process application context and generated schemas/documents.
+ */
+public final class BenchmarkApplication {
+    public static final String SCHEMA_ID = "benchmarkSchema";
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Starts the application without the web server. The database is placed in a temporary directory
+     * (the test {@link org.rzats.jsonschema.database.HashMapDatabaseProvider} takes precedence when it's on the classpath,
+     * unless database.in-memory is false).
+     *
+     * @param args Additional command line arguments, which take precedence over application.properties.
+     * @return The application context.
+     * @throws IOException if the temporary directory can't be created.
+     */
+    public static ConfigurableApplicationContext start(String... args) throws IOException {
+        return new SpringApplicationBuilder(JsonValidatorApplication.class)
+                .web(false)
+                .bannerMode(Banner.Mode.OFF)
+                .properties("rocksdb.path=" + Files.createTempDirectory("rocksdb-benchmark"),
+                        "logging.level.root=WARN")
+                .run(args);
+    }
+
+    /**
+     * @return A schema for an object holding an array of records with a few typed and constrained properties.
+     */
+    public static JsonNode schema() {
+        ObjectNode record = NODES.objectNode().put("type", "object");
+        ObjectNode properties = record.putObject("properties");
+        properties.putObject("source").put("type", "string");
+        properties.putObject("destination").put("type", "string");
+        properties.putObject("timeout").put("type", "integer").put("minimum", 0).put("maximum", 32767);
+        record.putArray("required").add("source").add("destination");
+
+        ObjectNode schema = NODES.objectNode().put("type", "object");
+        schema.putObject("properties").putObject("records").put("type", "array").set("items", record);
+        schema.putArray("required").add("records");
+        return schema;
+    }
+
+    /**
+     * @param size The size of the document - small (1 record), medium (100 records) or large (10000 records).
+     * @return A document conforming to {@link #schema()}, as UTF-8 encoded JSON.
+     */
+    public static byte[] document(String size) {
+        int recordCount;
+        switch (size) {
+            case "small":
+                recordCount = 1;
+                break;
+            case "medium":
+                recordCount = 100;
+                break;
+            case "large":
+                recordCount = 10000;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown document size %s", size));
+        }
+
+        ObjectNode document = NODES.objectNode();
+        ArrayNode records = document.putArray("records");
+        for (int i = 0; i < recordCount; i++) {
+            records.addObject()
+                    .put("source", "/home/alice/image-" + i + ".iso")
+                    .put("destination", "/mnt/storage/" + i)
+                    .put("timeout", i % 32768);
+        }
+        return document.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package org.rzats.jsonschema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JsonValidatorResponse#toJsonString()} for success and error responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+    private final JsonValidatorResponse success =
+            new JsonValidatorResponse("validateDocument", "config-schema", "success", null);
+    private final JsonValidatorResponse error =
+            new JsonValidatorResponse("validateDocument", "config-schema", "error",
+                    "error: object has missing required properties ([\"source\"])\n    level: \"error\"\n" +
+                            "    schema: {\"loadingURI\":\"#\",\"pointer\":\"\"}\n    instance: {\"pointer\":\"\"}\n" +
+                            "    domain: \"validation\"\n    keyword: \"required\"\n" +
+                            "    required: [\"destination\",\"source\"]\n    missing: [\"source\"]\n");
+
+    @Benchmark
+    public String successResponse() {
+        return success.toJsonString();
+    }
+
+    @Benchmark
+    public String errorResponse() {
+        return error.toJsonString();
+    }
+}
@@ -0,0 +1,68 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares validating a small document with a freshly compiled schema against reusing a cached one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaCompilationBenchmark {
+    private ConfigurableApplicationContext context;
+    private SchemaStore schemaStore;
+    private SchemaCache schemaCache;
+    private JsonNode document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start();
+        schemaStore = context.getBean(SchemaStore.class);
+        schemaStore.put(BenchmarkApplication.SCHEMA_ID, BenchmarkApplication.schema());
+        schemaCache = context.getBean(SchemaCache.class);
+        document = SchemaStore.parseJson(new ByteArrayInputStream(BenchmarkApplication.document("small")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * The uncached path - load the schema, build a new factory and compile the schema for every document.
+     */
+    @Benchmark
+    public ProcessingReport compileAndValidate() throws Exception {
+        JsonNode schemaNode = schemaStore.get(BenchmarkApplication.SCHEMA_ID);
+        return JsonSchemaFactory.byDefault().getJsonSchema(schemaNode).validate(document);
+    }
+
+    /**
+     * The cached path - reuse the compiled schema from the {@link SchemaCache}.
+     */
+    @Benchmark
+    public ProcessingReport cachedValidate() throws Exception {
+        return schemaCache.get(BenchmarkApplication.SCHEMA_ID).validate(document);
+    }
+}
@@ -0,0 +1,69 @@
+package org.rzats.jsonschema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JsonValidatorController#validateDocument} end to end (minus HTTP) for documents of different sizes,
+ * in each {@link ValidationMode}, with and without streaming validation and schema specialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidateDocumentBenchmark {
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    @Param({"full", "failFast", "boolean"})
+    public String mode;
+
+    @Param({"0", "1"})
+    public int stream;
+
+    /**
+     * 0 never specializes the schema, 1 specializes it on the first validation.
+     */
+    @Param({"0", "1"})
+    public int specializationThreshold;
+
+    private ConfigurableApplicationContext context;
+    private JsonValidatorController controller;
+    private byte[] document;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start("--schema.specialization.threshold=" + specializationThreshold);
+        context.getBean(SchemaStore.class).put(BenchmarkApplication.SCHEMA_ID, BenchmarkApplication.schema());
+        controller = context.getBean(JsonValidatorController.class);
+        document = BenchmarkApplication.document(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String validateDocument() throws Exception {
+        return controller.validateDocument(BenchmarkApplication.SCHEMA_ID, mode, 0, stream, new ByteArrayInputStream(document))
+                .get().getBody();
+    }
+}
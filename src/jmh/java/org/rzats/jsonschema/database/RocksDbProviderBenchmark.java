@@ -0,0 +1,87 @@
+package org.rzats.jsonschema.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RocksDbProvider} get/put throughput from several threads on a temporary database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RocksDbProviderBenchmark {
+    private static final int KEY_COUNT = 10000;
+
+    @Param({"256", "16384"})
+    public int valueSize;
+
+    @Param({"NO_COMPRESSION", "LZ4_COMPRESSION"})
+    public CompressionType compression;
+
+    private RocksDbProvider provider;
+    private byte[][] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        provider = new RocksDbProvider();
+        ReflectionTestUtils.setField(provider, "databasePath", Files.createTempDirectory("rocksdb-benchmark").toString());
+        ReflectionTestUtils.setField(provider, "blockCacheSize", 64L * 1024L * 1024L);
+        ReflectionTestUtils.setField(provider, "bloomFilterBits", 10);
+        ReflectionTestUtils.setField(provider, "writeBufferSize", 16L * 1024L * 1024L);
+        ReflectionTestUtils.setField(provider, "maxWriteBufferNumber", 3);
+        ReflectionTestUtils.setField(provider, "compactionStyle", CompactionStyle.LEVEL);
+        ReflectionTestUtils.setField(provider, "maxBackgroundCompactions", 2);
+        ReflectionTestUtils.setField(provider, "compressionType", compression);
+        provider.open();
+
+        value = new byte[valueSize];
+        new Random(42).nextBytes(value);
+
+        keys = new byte[KEY_COUNT][];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = ("schema-" + i).getBytes(StandardCharsets.UTF_8);
+            provider.put(keys[i], value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    public byte[] get() throws DatabaseProviderException {
+        return provider.get(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]);
+    }
+
+    @Benchmark
+    public void put() throws DatabaseProviderException {
+        provider.put(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)], value);
+    }
+}
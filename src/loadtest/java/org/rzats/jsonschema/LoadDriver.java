@@ -0,0 +1,449 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the whole service over HTTP at fixed arrival rates, to find the throughput at which it saturates.
+ * <p>
+ * The application is started in-process on a random port - with the in-memory database (load.storage=memory, the
+ * default) or with RocksDB in a temporary directory (load.storage=rocksdb) - unless load.target holds the base URL of
+ * a running service. The driver uploads load.schemas copies of the benchmark schema, then runs a step for each rate in
+ * load.rates (requests per second): load.warmup seconds which aren't recorded, followed by load.duration seconds
+ * which are.
+ * <p>
+ * Requests are sent open-loop: each request of a step is due at a fixed time, whatever happened to the earlier ones.
+ * Its operation is picked from load.mix (weights of {@link LoadOperation}s, e.g. validate:90,upload:5,download:5)
+ * and its schema at random. Requests are sent by load.clients threads, each with its own kept-alive connection; due
+ * requests wait in a queue while all of them are busy. Latencies are recorded from the time a request was due, so
+ * the time spent waiting behind a stalled service is counted (correcting for coordinated omission), and from the
+ * time it was actually sent (the service time).
+ * <p>
+ * Settings are command line arguments, e.g. --load.rates=100,200,400. All the arguments are passed on to the
+ * application as well, so they may override its properties too.
+ */
+public final class LoadDriver {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int TIMEOUT_MILLIS = 60000;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String baseUrl;
+    private final int clients;
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+    private final List<String> schemaIds = new ArrayList<>();
+    private final byte[] schema;
+    private final byte[] document;
+
+    private LoadDriver(String baseUrl, int clients, String mix, int schemaCount, String documentSize) {
+        this.baseUrl = baseUrl;
+        this.clients = clients;
+
+        String[] entries = mix.split(",");
+        this.operations = new LoadOperation[entries.length];
+        this.cumulativeWeights = new int[entries.length];
+        int totalWeight = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            operations[i] = LoadOperation.forName(entry[0]);
+            totalWeight += entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+            cumulativeWeights[i] = totalWeight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid operation mix %s", mix));
+        }
+
+        for (int i = 0; i < schemaCount; i++) {
+            schemaIds.add("loadSchema" + i);
+        }
+        this.schema = BenchmarkApplication.schema().toString().getBytes(StandardCharsets.UTF_8);
+        this.document = BenchmarkApplication.document(documentSize);
+    }
+
+    /**
+     * The entry point of the load driver.
+     *
+     * @param args Console arguments - the load.* settings and the properties of the application.
+     * @throws Exception if the application can't be started or the schemas can't be uploaded.
+     */
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource settings = new SimpleCommandLinePropertySource(args);
+        int clients = Integer.parseInt(setting(settings, "load.clients", "64"));
+
+        // Every client keeps its connection alive between requests
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(clients));
+        }
+
+        String target = setting(settings, "load.target", "");
+        ConfigurableApplicationContext context = target.isEmpty() ? start(settings, args) : null;
+        try {
+            String baseUrl = context == null ? target : "http://localhost:"
+                    + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+            LoadDriver driver = new LoadDriver(baseUrl, clients,
+                    setting(settings, "load.mix", "validate:90,upload:5,download:5"),
+                    Integer.parseInt(setting(settings, "load.schemas", "100")),
+                    setting(settings, "load.document-size", "small"));
+            driver.uploadSchemas();
+
+            long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(setting(settings, "load.warmup", "10")));
+            long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(setting(settings, "load.duration", "30")));
+            ArrayNode steps = MAPPER.createArrayNode();
+            for (String rate : setting(settings, "load.rates", "100,200,400,800").split(",")) {
+                StepResults results = driver.runStep(Double.parseDouble(rate.trim()), warmupNanos, durationNanos);
+                results.print();
+                steps.add(results.toJson());
+            }
+
+            String report = setting(settings, "load.report", "");
+            if (!report.isEmpty()) {
+                File reportFile = new File(report);
+                if (reportFile.getParentFile() != null) {
+                    Files.createDirectories(reportFile.getParentFile().toPath());
+                }
+                MAPPER.writer(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, steps);
+                System.out.printf("Results written to %s%n", reportFile);
+            }
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * Starts the application with its web server on a random port.
+     *
+     * @param settings The settings of the driver.
+     * @param args     The command line arguments, which take precedence over application.properties.
+     * @return The application context.
+     * @throws IOException if the temporary directory of the database can't be created.
+     */
+    private static ConfigurableApplicationContext start(SimpleCommandLinePropertySource settings, String[] args)
+            throws IOException {
+        String storage = setting(settings, "load.storage", "memory");
+        if (!storage.equals("memory") && !storage.equals("rocksdb")) {
+            throw new IllegalArgumentException(String.format("Unknown storage %s", storage));
+        }
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        addDefault(arguments, settings, "server.port", "0");
+        addDefault(arguments, settings, "database.in-memory", String.valueOf(storage.equals("memory")));
+        addDefault(arguments, settings, "rocksdb.path", Files.createTempDirectory("rocksdb-load").toString());
+        addDefault(arguments, settings, "logging.level.root", "WARN");
+        return new SpringApplicationBuilder(JsonValidatorApplication.class)
+                .bannerMode(Banner.Mode.OFF)
+                .run(arguments.toArray(new String[arguments.size()]));
+    }
+
+    private static String setting(SimpleCommandLinePropertySource settings, String key, String defaultValue) {
+        String value = settings.getProperty(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static void addDefault(List<String> arguments, SimpleCommandLinePropertySource settings, String key,
+                                   String value) {
+        if (!settings.containsProperty(key)) {
+            arguments.add("--" + key + "=" + value);
+        }
+    }
+
+    private void uploadSchemas() throws IOException {
+        for (String schemaId : schemaIds) {
+            String outcome = call(LoadOperation.UPLOAD, schemaId);
+            if (!outcome.equals("success")) {
+                throw new IllegalStateException(String.format("Schema with id %s couldn't be uploaded (%s)",
+                        schemaId, outcome));
+            }
+        }
+    }
+
+    /**
+     * Sends requests at a fixed rate, then waits for the outstanding ones.
+     *
+     * @param rate          Requests per second.
+     * @param warmupNanos   The time during which the requests sent aren't recorded.
+     * @param durationNanos The time during which the requests sent are recorded, after the warm-up.
+     * @return The results of the recorded requests.
+     * @throws InterruptedException if the driver is interrupted.
+     */
+    private StepResults runStep(double rate, long warmupNanos, long durationNanos) throws InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid rate %s", rate));
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(clients, clients, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        Random random = new Random();
+        long startTime = System.nanoTime();
+        long measureTime = startTime + warmupNanos;
+        long endTime = measureTime + durationNanos;
+        StepResults results = new StepResults(rate, measureTime, durationNanos);
+
+        for (long i = 0; ; i++) {
+            long dueTime = startTime + (long) (i * NANOS_PER_SECOND / rate);
+            if (dueTime >= endTime) {
+                break;
+            }
+            long delay;
+            while ((delay = dueTime - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            LoadOperation operation = pickOperation(random);
+            String schemaId = schemaIds.get(random.nextInt(schemaIds.size()));
+            boolean measured = dueTime >= measureTime;
+            if (measured) {
+                results.sent.incrementAndGet();
+            }
+            executor.execute(() -> send(results, operation, schemaId, dueTime, measured));
+        }
+
+        // Requests the service hasn't answered by then are left out, and the step is reported as saturated
+        executor.shutdown();
+        if (!executor.awaitTermination(Math.max(durationNanos, TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)),
+                TimeUnit.NANOSECONDS)) {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private LoadOperation pickOperation(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void send(StepResults results, LoadOperation operation, String schemaId, long dueTime, boolean measured) {
+        long sendTime = System.nanoTime();
+        String outcome;
+        try {
+            outcome = call(operation, schemaId);
+        } catch (IOException e) {
+            outcome = "io";
+        }
+        if (measured) {
+            results.record(operation, outcome, dueTime, sendTime, System.nanoTime());
+        }
+    }
+
+    /**
+     * Calls the API once.
+     *
+     * @param operation The API call.
+     * @param schemaId  The identifier of the schema.
+     * @return success, error (an error response) or http-STATUS (an HTTP status other than 200). Downloads respond
+     * with the schema itself rather than a success response.
+     * @throws IOException if the call fails.
+     */
+    private String call(LoadOperation operation, String schemaId) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + operation.path(schemaId)).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestMethod(operation.getMethod());
+        byte[] body = operation.body(schema, document);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        // Responses are read to the end, so the connection can be reused
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            try (InputStream in = connection.getErrorStream()) {
+                byte[] buffer = new byte[4096];
+                while (in != null && in.read(buffer) >= 0) {
+                    // Discarded
+                }
+            }
+            return "http-" + status;
+        }
+        JsonNode response;
+        try (InputStream in = connection.getInputStream()) {
+            response = MAPPER.readTree(in);
+        }
+        return response == null || "error".equals(response.path("status").textValue()) ? "error" : "success";
+    }
+
+    /**
+     * The outcomes and latencies of the requests recorded during a step.
+     */
+    private static final class StepResults {
+        private final double rate;
+        private final long measureTime;
+        private final long durationNanos;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong lastCompletionTime = new AtomicLong(Long.MIN_VALUE);
+        private final Map<LoadOperation, Recorder> responseTimes = new EnumMap<>(LoadOperation.class);
+        private final Map<LoadOperation, Recorder> serviceTimes = new EnumMap<>(LoadOperation.class);
+        private final ConcurrentMap<LoadOperation, ConcurrentMap<String, LongAdder>> outcomes =
+                new ConcurrentHashMap<>();
+        private Map<LoadOperation, Histogram[]> histograms;
+
+        private StepResults(double rate, long measureTime, long durationNanos) {
+            this.rate = rate;
+            this.measureTime = measureTime;
+            this.durationNanos = durationNanos;
+            for (LoadOperation operation : LoadOperation.values()) {
+                responseTimes.put(operation, new Recorder(HIGHEST_LATENCY_MICROS, 3));
+                serviceTimes.put(operation, new Recorder(HIGHEST_LATENCY_MICROS, 3));
+            }
+        }
+
+        private static long toMicros(long nanos) {
+            return Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_LATENCY_MICROS);
+        }
+
+        private void record(LoadOperation operation, String outcome, long dueTime, long sendTime, long completionTime) {
+            responseTimes.get(operation).recordValue(toMicros(completionTime - dueTime));
+            serviceTimes.get(operation).recordValue(toMicros(completionTime - sendTime));
+            outcomes.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(outcome, key -> new LongAdder())
+                    .increment();
+            lastCompletionTime.accumulateAndGet(completionTime, Math::max);
+        }
+
+        /**
+         * @return The response and service time histograms of each operation which was sent at least once.
+         */
+        private Map<LoadOperation, Histogram[]> histograms() {
+            if (histograms == null) {
+                histograms = new EnumMap<>(LoadOperation.class);
+                for (LoadOperation operation : LoadOperation.values()) {
+                    Histogram responseTime = responseTimes.get(operation).getIntervalHistogram();
+                    if (responseTime.getTotalCount() > 0) {
+                        histograms.put(operation, new Histogram[]{
+                                responseTime, serviceTimes.get(operation).getIntervalHistogram()});
+                    }
+                }
+            }
+            return histograms;
+        }
+
+        private long completed() {
+            long completed = 0;
+            for (Histogram[] operationHistograms : histograms().values()) {
+                completed += operationHistograms[0].getTotalCount();
+            }
+            return completed;
+        }
+
+        /**
+         * @return Completed requests per second, from the start of the measurement to the last completion.
+         */
+        private double throughput() {
+            long elapsed = Math.max(lastCompletionTime.get() - measureTime, durationNanos);
+            return completed() * NANOS_PER_SECOND / elapsed;
+        }
+
+        /**
+         * @return true if the service fell behind - it completed less than 95% of the rate, or left requests unfinished.
+         */
+        private boolean isSaturated() {
+            return completed() < sent.get() || throughput() < 0.95 * rate;
+        }
+
+        private Map<String, Long> outcomes(LoadOperation operation) {
+            Map<String, Long> counts = new TreeMap<>();
+            outcomes.getOrDefault(operation, new ConcurrentHashMap<>())
+                    .forEach((outcome, count) -> counts.put(outcome, count.sum()));
+            return counts;
+        }
+
+        private static ObjectNode latencies(Histogram histogram) {
+            ObjectNode node = MAPPER.createObjectNode();
+            for (double percentile : PERCENTILES) {
+                node.put("p" + percentile, histogram.getValueAtPercentile(percentile) / 1000.0);
+            }
+            node.put("max", histogram.getMaxValue() / 1000.0);
+            return node;
+        }
+
+        private void print() {
+            System.out.printf("%nRate %.1f/s: %d sent, %d completed, %.1f/s%s%n", rate, sent.get(), completed(),
+                    throughput(), isSaturated() ? " (saturated)" : "");
+            StringBuilder header = new StringBuilder(String.format("  %-9s %9s  %-7s", "operation", "count", "from"));
+            for (double percentile : PERCENTILES) {
+                header.append(String.format(" %9s", "p" + percentile));
+            }
+            System.out.println(header.append(String.format(" %9s  outcomes (latencies in ms)", "max")));
+
+            for (Map.Entry<LoadOperation, Histogram[]> entry : histograms().entrySet()) {
+                String[] labels = {"due", "sent"};
+                for (int i = 0; i < labels.length; i++) {
+                    Histogram histogram = entry.getValue()[i];
+                    StringBuilder line = new StringBuilder(String.format("  %-9s %9s  %-7s",
+                            i == 0 ? entry.getKey().getName() : "", i == 0 ? histogram.getTotalCount() : "",
+                            labels[i]));
+                    for (double percentile : PERCENTILES) {
+                        line.append(String.format(" %9.2f", histogram.getValueAtPercentile(percentile) / 1000.0));
+                    }
+                    line.append(String.format(" %9.2f", histogram.getMaxValue() / 1000.0));
+                    System.out.println(i == 0 ? line.append("  ").append(outcomes(entry.getKey())) : line);
+                }
+            }
+        }
+
+        private ObjectNode toJson() {
+            ObjectNode node = MAPPER.createObjectNode()
+                    .put("rate", rate)
+                    .put("sent", sent.get())
+                    .put("completed", completed())
+                    .put("throughput", throughput())
+                    .put("saturated", isSaturated());
+            ObjectNode operationsNode = node.putObject("operations");
+            for (Map.Entry<LoadOperation, Histogram[]> entry : histograms().entrySet()) {
+                ObjectNode operationNode = operationsNode.putObject(entry.getKey().getName())
+                        .put("count", entry.getValue()[0].getTotalCount());
+                ObjectNode outcomesNode = operationNode.putObject("outcomes");
+                outcomes(entry.getKey()).forEach(outcomesNode::put);
+                operationNode.set("responseTime", latencies(entry.getValue()[0]));
+                operationNode.set("serviceTime", latencies(entry.getValue()[1]));
+            }
+            return node;
+        }
+    }
+}
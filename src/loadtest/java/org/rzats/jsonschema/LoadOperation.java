@@ -0,0 +1,74 @@
+package org.rzats.jsonschema;
+
+/**
+ * The API calls replayed by the {@link LoadDriver}, each against one of the schemas it has uploaded.
+ */
+public enum LoadOperation {
+    /**
+     * Validates a conforming document against the schema - POST /validate/SCHEMAID.
+     */
+    VALIDATE("validate", "POST", "/validate/%s"),
+    /**
+     * Overwrites the schema with the same content - POST /schema/SCHEMAID?override=1.
+     */
+    UPLOAD("upload", "POST", "/schema/%s?override=1"),
+    /**
+     * Downloads the schema - GET /schema/SCHEMAID.
+     */
+    DOWNLOAD("download", "GET", "/schema/%s");
+
+    private final String name;
+    private final String method;
+    private final String pathFormat;
+
+    LoadOperation(String name, String method, String pathFormat) {
+        this.name = name;
+        this.method = method;
+        this.pathFormat = pathFormat;
+    }
+
+    /**
+     * @param name The name of an operation, as used in load.mix.
+     * @return The operation.
+     */
+    public static LoadOperation forName(String name) {
+        for (LoadOperation operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown operation %s", name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @param schemaId The identifier of the schema.
+     * @return The path of the call, relative to the base URL of the service.
+     */
+    public String path(String schemaId) {
+        return String.format(pathFormat, schemaId);
+    }
+
+    /**
+     * @param schema   The schema, as UTF-8 encoded JSON.
+     * @param document The document, as UTF-8 encoded JSON.
+     * @return The request body, or null if the call has none.
+     */
+    public byte[] body(byte[] schema, byte[] document) {
+        switch (this) {
+            case VALIDATE:
+                return document;
+            case UPLOAD:
+                return schema;
+            default:
+                return null;
+        }
+    }
+}
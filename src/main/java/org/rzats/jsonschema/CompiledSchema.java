@@ -0,0 +1,339 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JacksonUtils;
+import com.github.fge.jackson.jsonpointer.JsonPointer;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.processing.Processor;
+import com.github.fge.jsonschema.core.report.AbstractProcessingReport;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.core.tree.SchemaTree;
+import com.github.fge.jsonschema.core.tree.SimpleJsonTree;
+import com.github.fge.jsonschema.processors.data.FullData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A loaded JSON schema, validated by the shared validation processor of a
+ * {@link com.github.fge.jsonschema.main.JsonSchemaFactory}.
+ * <p>
+ * Unlike {@link com.github.fge.jsonschema.main.JsonSchema}, the report is created per validation, so validation can
+ * stop after a given number of errors, and messages can be dropped instead of being collected. Documents can also be
+ * validated while they are read, by a {@link StreamingValidator} built the first time it is needed.
+ * <p>
+ * Once a schema has validated a given number of documents, it is compiled into a {@link SpecializedValidator}, which
+ * answers for the valid documents from then on. Invalid documents are still validated by the validation processor,
+ * so their reports don't change.
+ * <p>
+ * Each document is given a {@link RegexBudget} for the regular expressions of the schema: a document which spends it
+ * fails to validate with a {@link ProcessingException}, rather than holding a validation thread for as long as a
+ * catastrophic expression takes.
+ */
+public class CompiledSchema {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String INVALID_MESSAGE = "instance is not valid against the schema";
+
+    private final Processor<FullData, FullData> processor;
+    private final SchemaTree schema;
+    private final AtomicLong validations = new AtomicLong();
+    private final long specializationThreshold;
+    private final long regexTimeLimit;
+    private final RegexBudget.Recorder regexRecorder;
+    private volatile StreamingValidator streamingValidator;
+    private volatile SpecializedValidator specializedValidator;
+
+    /**
+     * The class constructor, for a schema which is never specialized and whose regular expressions aren't limited.
+     *
+     * @param processor The validation processor of the schema factory.
+     * @param schema    The loaded schema.
+     */
+    public CompiledSchema(Processor<FullData, FullData> processor, SchemaTree schema) {
+        this(processor, schema, 0);
+    }
+
+    /**
+     * The class constructor, for a schema whose regular expressions aren't limited.
+     *
+     * @param processor               The validation processor of the schema factory.
+     * @param schema                  The loaded schema.
+     * @param specializationThreshold The number of documents validated before the schema is compiled into a
+     *                                {@link SpecializedValidator}, or 0 to never compile it.
+     */
+    public CompiledSchema(Processor<FullData, FullData> processor, SchemaTree schema, long specializationThreshold) {
+        this(processor, schema, specializationThreshold, 0, null);
+    }
+
+    /**
+     * The class constructor.
+     *
+     * @param processor               The validation processor of the schema factory.
+     * @param schema                  The loaded schema.
+     * @param specializationThreshold The number of documents validated before the schema is compiled into a
+     *                                {@link SpecializedValidator}, or 0 to never compile it.
+     * @param regexTimeLimit          The time a document may spend matching regular expressions, in milliseconds,
+     *                                or 0 for no limit.
+     * @param regexRecorder           Receives the budget of every document which matched regular expressions, or
+     *                                null.
+     */
+    public CompiledSchema(Processor<FullData, FullData> processor, SchemaTree schema, long specializationThreshold,
+                          long regexTimeLimit, RegexBudget.Recorder regexRecorder) {
+        this.processor = processor;
+        this.schema = schema;
+        this.specializationThreshold = specializationThreshold;
+        this.regexTimeLimit = TimeUnit.MILLISECONDS.toNanos(regexTimeLimit);
+        this.regexRecorder = regexRecorder;
+    }
+
+    /**
+     * @return The validation processor of the schema.
+     */
+    Processor<FullData, FullData> getProcessor() {
+        return processor;
+    }
+
+    /**
+     * @return true if valid documents are validated by a {@link SpecializedValidator}.
+     */
+    public boolean isSpecialized() {
+        return specializedValidator != null;
+    }
+
+    /**
+     * Counts a validation, compiling the schema into a {@link SpecializedValidator} once it is hot.
+     *
+     * @return The specialized validator, or null if the schema isn't hot yet or can't be compiled.
+     */
+    private SpecializedValidator specializedValidator() {
+        SpecializedValidator validator = specializedValidator;
+        if (validator == null && specializationThreshold > 0 && validations.get() < specializationThreshold
+                && validations.incrementAndGet() == specializationThreshold) {
+            // Only the validation reaching the threshold compiles the schema
+            validator = new SpecializedValidator(this, schema.getBaseNode());
+            if (validator.isSupported()) {
+                specializedValidator = validator;
+            }
+        }
+        return specializedValidator;
+    }
+
+    /**
+     * Validates a document, collecting every error.
+     *
+     * @param instance The JSON document.
+     * @return The validation report.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    public ProcessingReport validate(JsonNode instance) throws ProcessingException {
+        return validate(instance, ValidationMode.FULL, 0);
+    }
+
+    /**
+     * Validates a document.
+     *
+     * @param instance  The JSON document.
+     * @param mode      The validation mode.
+     * @param maxErrors The number of errors after which validation stops in {@link ValidationMode#FULL} mode,
+     *                  or 0 to collect every error.
+     * @return The validation report. In {@link ValidationMode#BOOLEAN} mode the report contains no messages.
+     * @throws ProcessingException if the schema can't be processed, or the document spends its regular expression
+     *                             budget.
+     */
+    public ProcessingReport validate(JsonNode instance, ValidationMode mode, int maxErrors) throws ProcessingException {
+        LimitedProcessingReport report = new LimitedProcessingReport(
+                mode == ValidationMode.FULL ? maxErrors : 1, mode != ValidationMode.BOOLEAN);
+        SpecializedValidator validator = specializedValidator();
+        RegexBudget budget = RegexBudget.start(regexTimeLimit);
+        try {
+            if (validator != null && validator.isValid(instance)) {
+                return report;
+            }
+            if (validator != null && mode == ValidationMode.BOOLEAN) {
+                // The messages would be dropped anyway
+                report.error(new ProcessingMessage().setMessage(INVALID_MESSAGE));
+                return report;
+            }
+            processor.process(report, new FullData(schema, new SimpleJsonTree(instance)));
+        } catch (ErrorLimitReachedException e) {
+            // The report is already marked as failed
+        } catch (RegexBudget.ExhaustedException e) {
+            throw exhausted();
+        } finally {
+            close(budget);
+        }
+        return report;
+    }
+
+    /**
+     * Validates a document while it is read, without building a tree of the whole document (see
+     * {@link StreamingValidator}). In {@link ValidationMode#FAIL_FAST} and {@link ValidationMode#BOOLEAN} mode, the
+     * rest of the document isn't read once an error has been found.
+     *
+     * @param document  The JSON document.
+     * @param mode      The validation mode.
+     * @param maxErrors The number of errors after which validation stops in {@link ValidationMode#FULL} mode,
+     *                  or 0 to collect every error.
+     * @return The validation report. In {@link ValidationMode#BOOLEAN} mode the report contains no messages.
+     * @throws IOException         if the document is not valid JSON.
+     * @throws ProcessingException if the schema can't be processed, or the document spends its regular expression
+     *                             budget.
+     */
+    public ProcessingReport validate(InputStream document, ValidationMode mode, int maxErrors)
+            throws IOException, ProcessingException {
+        StreamingValidator validator = streamingValidator;
+        if (validator == null) {
+            // Building the validator twice in a race is harmless
+            validator = new StreamingValidator(this, schema.getNode());
+            streamingValidator = validator;
+        }
+
+        LimitedProcessingReport report = new LimitedProcessingReport(
+                mode == ValidationMode.FULL ? maxErrors : 1, mode != ValidationMode.BOOLEAN);
+        RegexBudget budget = RegexBudget.start(regexTimeLimit);
+        try (JsonParser parser = JSON_FACTORY.createParser(document)) {
+            validator.validate(parser, report);
+        } catch (ErrorLimitReachedException e) {
+            // The report is already marked as failed
+        } catch (RegexBudget.ExhaustedException e) {
+            throw exhausted();
+        } finally {
+            close(budget);
+        }
+        return report;
+    }
+
+    /**
+     * Ends the regular expression budget of a document, reporting it if the document matched any expression.
+     *
+     * @param budget The budget started for the document.
+     */
+    private void close(RegexBudget budget) {
+        budget.close();
+        if (regexRecorder != null && (budget.getSpentNanos() > 0 || budget.isExhausted())) {
+            regexRecorder.record(budget);
+        }
+    }
+
+    private ProcessingException exhausted() {
+        return new ProcessingException(String.format("regular expressions took longer than %d ms",
+                TimeUnit.NANOSECONDS.toMillis(regexTimeLimit)));
+    }
+
+    /**
+     * Validates a part of a document against a part of the schema, logging the errors to the report of the whole
+     * document. Used by {@link StreamingValidator} for the parts it can't validate by itself.
+     *
+     * @param schemaPointer   The pointer to the part of the schema.
+     * @param instancePointer The pointer to the part of the document.
+     * @param instance        The part of the document.
+     * @param report          The report of the whole document.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    void validate(JsonPointer schemaPointer, JsonPointer instancePointer, JsonNode instance, ProcessingReport report)
+            throws ProcessingException {
+        ProcessingReport subtreeReport = instancePointer.isEmpty() ? report : new RelocatingProcessingReport(report, instancePointer);
+        processor.process(subtreeReport, new FullData(schema.setPointer(schemaPointer), new SimpleJsonTree(instance)));
+    }
+
+    /**
+     * Checks whether a document is valid against a part of the schema. Used by {@link SpecializedValidator} for the
+     * parts it can't check by itself.
+     *
+     * @param schemaPointer The pointer to the part of the schema.
+     * @param instance      The document, or a part of it.
+     * @return true if the document is valid.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    boolean isValid(JsonPointer schemaPointer, JsonNode instance) throws ProcessingException {
+        LimitedProcessingReport report = new LimitedProcessingReport(1, false);
+        try {
+            processor.process(report, new FullData(schema.setPointer(schemaPointer), new SimpleJsonTree(instance)));
+        } catch (ErrorLimitReachedException e) {
+            // The report is already marked as failed
+        }
+        return report.isSuccess();
+    }
+
+    /**
+     * Thrown by {@link LimitedProcessingReport} to abort validation once enough errors have been found.
+     */
+    private static final class ErrorLimitReachedException extends RuntimeException {
+        private static final ErrorLimitReachedException INSTANCE = new ErrorLimitReachedException();
+
+        private ErrorLimitReachedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A report which aborts validation after a given number of errors, and optionally drops all messages.
+     */
+    private static final class LimitedProcessingReport extends AbstractProcessingReport {
+        private final int maxErrors;
+        private final List<ProcessingMessage> messages;
+        private int errorCount;
+
+        private LimitedProcessingReport(int maxErrors, boolean collectMessages) {
+            super(LogLevel.ERROR, LogLevel.FATAL);
+            this.maxErrors = maxErrors;
+            this.messages = collectMessages ? new ArrayList<ProcessingMessage>() : null;
+        }
+
+        @Override
+        public void log(LogLevel level, ProcessingMessage message) {
+            if (messages != null) {
+                messages.add(message);
+            }
+            if (maxErrors > 0 && ++errorCount >= maxErrors) {
+                throw ErrorLimitReachedException.INSTANCE;
+            }
+        }
+
+        @Override
+        public Iterator<ProcessingMessage> iterator() {
+            return messages == null ? Collections.<ProcessingMessage>emptyIterator() : messages.iterator();
+        }
+    }
+
+    /**
+     * A report which forwards errors to another report, moving their instance pointers under a given pointer.
+     */
+    private static final class RelocatingProcessingReport extends AbstractProcessingReport {
+        private final ProcessingReport target;
+        private final String prefix;
+
+        private RelocatingProcessingReport(ProcessingReport target, JsonPointer prefix) {
+            super(LogLevel.ERROR, LogLevel.FATAL);
+            this.target = target;
+            this.prefix = prefix.toString();
+        }
+
+        @Override
+        public void log(LogLevel level, ProcessingMessage message) {
+            String pointer = message.asJson().path("instance").path("pointer").asText();
+            message.put("instance", JacksonUtils.nodeFactory().objectNode().put("pointer", prefix + pointer));
+            try {
+                target.error(message);
+            } catch (ProcessingException e) {
+                // The target accepts errors, it has the same exception threshold
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Iterator<ProcessingMessage> iterator() {
+            return Collections.<ProcessingMessage>emptyIterator();
+        }
+    }
+}
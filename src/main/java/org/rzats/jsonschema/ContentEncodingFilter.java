@@ -0,0 +1,246 @@
+package org.rzats.jsonschema;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes gzip and deflate encoded request bodies, as announced by the Content-Encoding header.
+ * <p>
+ * The body is inflated while it is read, so large documents are never buffered in compressed and decompressed form
+ * at the same time. Requests with any other content encoding are rejected with HTTP 415. Decoded bodies larger than
+ * request.decoding.max-size bytes fail to be read, and the request is answered with HTTP 413 whatever its handler
+ * responds, so a small compressed request can't inflate into more data than the service accepts. Response
+ * compression is left to the web server (see the server.compression.* properties).
+ */
+@Component
+public class ContentEncodingFilter extends OncePerRequestFilter {
+    private static final String TOO_LARGE_ATTRIBUTE = ContentEncodingFilter.class.getName() + ".TOO_LARGE";
+
+    @Value("${request.decoding.max-size:104857600}")
+    private long maxDecodedSize;
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // The result of an asynchronous request is written by another dispatch, which has to keep the status too
+        if (isAsyncDispatch(request)) {
+            if (request.getAttribute(TOO_LARGE_ATTRIBUTE) != null) {
+                DecodedResponse decodedResponse = new DecodedResponse(response);
+                decodedResponse.tooLarge();
+                response = decodedResponse;
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.trim().equalsIgnoreCase("identity")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        encoding = encoding.trim().toLowerCase();
+        if (!encoding.equals("gzip") && !encoding.equals("x-gzip") && !encoding.equals("deflate")) {
+            response.setStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value());
+            response.setContentType("application/json;charset=UTF-8");
+            response.getOutputStream().write(new JsonValidatorResponse(null, null, "error",
+                    String.format("Unsupported content encoding %s (use gzip or deflate)", encoding))
+                    .toJsonString().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        DecodedResponse decodedResponse = new DecodedResponse(response);
+        chain.doFilter(new DecodedRequest(request, encoding.equals("deflate"), maxDecodedSize, decodedResponse),
+                decodedResponse);
+    }
+
+    /**
+     * A request whose body is inflated while it is read. The Content-Encoding and Content-Length headers are hidden,
+     * since they describe the encoded body.
+     */
+    private static final class DecodedRequest extends HttpServletRequestWrapper {
+        private final boolean deflate;
+        private final long maxSize;
+        private final DecodedResponse response;
+        private ServletInputStream body;
+
+        private DecodedRequest(HttpServletRequest request, boolean deflate, long maxSize, DecodedResponse response) {
+            super(request);
+            this.deflate = deflate;
+            this.maxSize = maxSize;
+            this.response = response;
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                ServletInputStream encoded = super.getInputStream();
+                body = new DecodedInputStream(encoded,
+                        deflate ? new InflaterInputStream(encoded) : new GZIPInputStream(encoded), maxSize, () -> {
+                            setAttribute(TOO_LARGE_ATTRIBUTE, Boolean.TRUE);
+                            response.tooLarge();
+                        });
+            }
+            return body;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.<String>emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !isHidden(name))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * The response of a request with a decoded body, whose status stays HTTP 413 (Payload Too Large) once the body
+     * turned out to be too large: handlers report the read failure like any other, usually with HTTP 200.
+     */
+    private static final class DecodedResponse extends HttpServletResponseWrapper {
+        private boolean tooLarge;
+
+        private DecodedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        private void tooLarge() {
+            tooLarge = true;
+            if (!isCommitted()) {
+                super.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            }
+        }
+
+        @Override
+        public void setStatus(int status) {
+            if (!tooLarge) {
+                super.setStatus(status);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int status, String message) {
+            if (!tooLarge) {
+                super.setStatus(status, message);
+            }
+        }
+    }
+
+    /**
+     * Adapts the inflating stream to the {@link ServletInputStream} interface, failing once more than the maximum
+     * size has been inflated. Non-blocking reads rely on the readiness of the encoded body, which the inflater
+     * consumes as it goes.
+     */
+    private static final class DecodedInputStream extends ServletInputStream {
+        private final ServletInputStream encoded;
+        private final InputStream decoded;
+        private final long maxSize;
+        private final Runnable tooLarge;
+        private long size;
+        private boolean finished;
+
+        private DecodedInputStream(ServletInputStream encoded, InputStream decoded, long maxSize, Runnable tooLarge) {
+            this.encoded = encoded;
+            this.decoded = decoded;
+            this.maxSize = maxSize;
+            this.tooLarge = tooLarge;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = decoded.read();
+            finished = value < 0;
+            count(finished ? 0 : 1);
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = decoded.read(buffer, offset, length);
+            finished = count < 0;
+            count(Math.max(count, 0));
+            return count;
+        }
+
+        private void count(int count) throws IOException {
+            size += count;
+            if (maxSize > 0 && size > maxSize) {
+                tooLarge.run();
+                throw new IOException(String.format("Request body is larger than %d bytes once decoded", maxSize));
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            decoded.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return finished || encoded.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+            encoded.setReadListener(listener);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.rzats.jsonschema;
+
+import com.github.fge.jsonschema.core.util.RhinoHelper;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A precompiled ECMA 262 regular expression, as used by the {@code pattern} and {@code patternProperties} keywords.
+ * <p>
+ * Expressions whose meaning is the same in Java are translated into a {@link Pattern} once, and matched within the
+ * {@link RegexBudget} of the current document: the matcher reads the string through a {@link CharSequence} which
+ * aborts the match once the budget is spent. Any other expression (see {@link #isBounded()}) is matched by the
+ * validation processor's engine, whose time is only checked against the budget once the match is over; schemas using
+ * such expressions are refused while a time limit is configured.
+ */
+public final class EcmaRegex {
+    /**
+     * The ECMA 262 white space and line terminators, as members of a Java class: the engine of the validation
+     * processor counts every space separator of the JDK's Unicode version as white space.
+     */
+    private static final String SPACES = "\\t\\n\\x0B\\f\\r\\u00A0\\u2028\\u2029\\uFEFF\\p{Zs}";
+
+    /**
+     * The surrogate which stands for every surrogate of a string, so that Java doesn't join surrogate pairs into a
+     * single code point: a low surrogate is never the first half of a pair.
+     */
+    private static final char SURROGATE = '\uDFFF';
+
+    private final String source;
+    private final Pattern pattern;
+    private final boolean surrogatesAlike;
+
+    /**
+     * The class constructor.
+     *
+     * @param source A valid ECMA 262 expression.
+     */
+    public EcmaRegex(String source) {
+        this.source = source;
+        String translated = translate(source);
+        this.pattern = translated == null ? null : compile(translated);
+        this.surrogatesAlike = treatsSurrogatesAlike(source);
+    }
+
+    /**
+     * @return The ECMA 262 expression.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if the expression is matched by a Java pattern, at least for some strings.
+     */
+    public boolean isTranslated() {
+        return pattern != null;
+    }
+
+    /**
+     * @return true if the expression is matched by a Java pattern for every string, so that the match is aborted
+     * once the budget of the current document is spent.
+     */
+    public boolean isBounded() {
+        return pattern != null && surrogatesAlike;
+    }
+
+    /**
+     * Translates an expression into a Java one, if its meaning can be kept. The expression is known to be a valid
+     * ECMA 262 expression, so only the constructs which mean something else in Java have to be excluded: escapes of
+     * letters other than the common classes, back references, lookbehinds and named groups, nested classes or
+     * intersections inside classes, ranges starting with a class escape, and {@code \S} inside a negated class, which
+     * Java would add to the class after negating it. The dot and the dollar sign are rewritten, since Java's also treat
+     * {@code \u0085} as a line terminator and match before a final one, and so are {@code \s}, {@code \S},
+     * {@code \b} and {@code \B}, whose Java meanings don't cover the same white space.
+     *
+     * @param source The ECMA 262 expression.
+     * @return The Java expression, or null if the expression can't be translated.
+     */
+    private static String translate(String source) {
+        StringBuilder translated = new StringBuilder(source.length() + 16);
+        boolean inClass = false;
+        boolean negated = false;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                if (++i == source.length() || "dDwWsSbBtnrfux.\\/^$|?*+()[]{}-".indexOf(source.charAt(i)) < 0
+                        || (inClass && "bB".indexOf(source.charAt(i)) >= 0)
+                        || (inClass && negated && source.charAt(i) == 'S')
+                        || (inClass && "dDwWsS".indexOf(source.charAt(i)) >= 0 && source.startsWith("-", i + 1)
+                        && !source.startsWith("-]", i + 1))) {
+                    return null;
+                }
+                switch (source.charAt(i)) {
+                    case 's':
+                        translated.append(inClass ? SPACES : "[" + SPACES + "]");
+                        break;
+                    case 'S':
+                        translated.append("[^").append(SPACES).append(']');
+                        break;
+                    case 'b':
+                        translated.append("(?:(?<=\\w)(?!\\w)|(?<!\\w)(?=\\w))");
+                        break;
+                    case 'B':
+                        translated.append("(?:(?<=\\w)(?=\\w)|(?<!\\w)(?!\\w))");
+                        break;
+                    default:
+                        translated.append(c).append(source.charAt(i));
+                }
+                continue;
+            }
+            if (inClass) {
+                if (c == '[' || (c == '&' && source.startsWith("&", i + 1))) {
+                    return null;
+                }
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+                negated = source.startsWith("^", i + 1);
+                // A leading ] is a literal in Java, but closes an empty class in ECMA 262
+                if (source.startsWith("]", i + 1) || source.startsWith("^]", i + 1)) {
+                    return null;
+                }
+            } else if (c == '(' && source.startsWith("?", i + 1) && !source.startsWith("?:", i + 1)
+                    && !source.startsWith("?=", i + 1) && !source.startsWith("?!", i + 1)) {
+                return null;
+            } else if (c == '.') {
+                translated.append("[^\\n\\r\\u2028\\u2029]");
+                continue;
+            } else if (c == '$') {
+                translated.append("\\z");
+                continue;
+            }
+            translated.append(c);
+        }
+        return translated.toString();
+    }
+
+    /**
+     * Checks whether an expression can't tell one surrogate from another: it contains none, and its class ranges
+     * either hold them all or none of them. Every surrogate of a string can then be replaced with {@link #SURROGATE},
+     * so that Java sees the two halves of a pair as ECMA 262 does.
+     *
+     * @param source The ECMA 262 expression.
+     * @return true if the expression treats every surrogate alike.
+     */
+    private static boolean treatsSurrogatesAlike(String source) {
+        boolean inClass = false;
+        boolean range = false;
+        int previous = -1;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            boolean escaped = c == '\\' && i + 1 < source.length();
+            int value = c;
+            if (escaped) {
+                char escape = source.charAt(++i);
+                int digits = escape == 'u' ? 4 : escape == 'x' ? 2 : 0;
+                if (digits > 0 && isHex(source, i + 1, digits)) {
+                    value = Integer.parseInt(source.substring(i + 1, i + 1 + digits), 16);
+                    i += digits;
+                } else {
+                    value = "dDwWsSbB".indexOf(escape) >= 0 ? -1 : escape;
+                }
+            }
+            if (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE) {
+                return false;
+            }
+            if (!inClass) {
+                inClass = c == '[' && !escaped;
+                previous = -1;
+            } else if (c == ']' && !escaped) {
+                inClass = false;
+            } else if (c == '-' && !escaped && previous >= 0 && !source.startsWith("]", i + 1)) {
+                range = true;
+            } else if (range) {
+                range = false;
+                if (previous <= Character.MAX_SURROGATE && value >= Character.MIN_SURROGATE
+                        && (previous > Character.MIN_SURROGATE || value < Character.MAX_SURROGATE)) {
+                    return false;
+                }
+                previous = -1;
+            } else {
+                previous = value;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHex(String source, int start, int digits) {
+        if (start + digits > source.length()) {
+            return false;
+        }
+        for (int i = start; i < start + digits; i++) {
+            if (Character.digit(source.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Pattern compile(String translated) {
+        try {
+            return Pattern.compile(translated);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the expression matches any part of a string, within the budget of the current document.
+     *
+     * @param value A string.
+     * @return true if the expression matches.
+     * @throws RegexBudget.ExhaustedException if the budget of the current document is spent.
+     */
+    public boolean find(String value) {
+        RegexBudget budget = RegexBudget.current();
+        CharSequence units = translatable(value);
+        if (budget == null) {
+            return units != null ? pattern.matcher(units).find() : RhinoHelper.regMatch(source, value);
+        }
+
+        long startTime = System.nanoTime();
+        boolean found;
+        try {
+            if (units == null) {
+                found = RhinoHelper.regMatch(source, value);
+            } else if (budget.isLimited()) {
+                found = pattern.matcher(new DeadlineCharSequence(units, budget, startTime + budget.remainingNanos())).find();
+            } else {
+                found = pattern.matcher(units).find();
+            }
+        } finally {
+            budget.spend(System.nanoTime() - startTime);
+        }
+        budget.check();
+        return found;
+    }
+
+    /**
+     * Prepares a string for the Java pattern: ECMA 262 expressions see the two halves of a surrogate pair, Java ones
+     * see a single code point, so surrogates are replaced with one which never joins another.
+     *
+     * @param value A string.
+     * @return The string to match, or null if the Java pattern can't match it.
+     */
+    private CharSequence translatable(String value) {
+        if (pattern == null) {
+            return null;
+        }
+        char[] units = null;
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isSurrogate(value.charAt(i))) {
+                if (!surrogatesAlike) {
+                    return null;
+                }
+                if (units == null) {
+                    units = value.toCharArray();
+                }
+                units[i] = SURROGATE;
+            }
+        }
+        return units == null ? value : new String(units);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * A string read by a Java matcher, which aborts the match once a deadline has passed. The clock is only read
+     * every {@link #CHECK_INTERVAL} characters, since matches read characters far more often than they take a
+     * microsecond.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+        private static final int CHECK_INTERVAL = 1024;
+
+        private final CharSequence value;
+        private final RegexBudget budget;
+        private final long deadline;
+        private int reads;
+
+        private DeadlineCharSequence(CharSequence value, RegexBudget budget, long deadline) {
+            this.value = value;
+            this.budget = budget;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                if (System.nanoTime() - deadline > 0) {
+                    throw budget.exhausted();
+                }
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return value.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return value.toString();
+        }
+    }
+}
@@ -14,6 +14,6 @@ public class JsonValidatorApplication {
      * @param args Console arguments.
      */
     public static void main(String[] args) {
-        SpringApplication.run(JsonValidatorApplication.class);
+        SpringApplication.run(JsonValidatorApplication.class, args);
     }
 }
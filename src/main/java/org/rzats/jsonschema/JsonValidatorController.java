@@ -1,23 +1,30 @@
 package org.rzats.jsonschema;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.github.fge.jackson.JsonLoader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.fge.jackson.JacksonUtils;
+import com.github.fge.jackson.JsonNodeReader;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
-import com.github.fge.jsonschema.main.JsonSchema;
-import com.github.fge.jsonschema.main.JsonSchemaFactory;
-import org.rzats.jsonschema.database.DatabaseProvider;
+import com.google.common.io.ByteStreams;
 import org.rzats.jsonschema.database.DatabaseProviderException;
 import org.rzats.jsonschema.database.RocksDbProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.web.ErrorController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -25,7 +32,25 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * The main REST controller. Processes all the API endpoints, as well as error handling.
@@ -33,12 +58,46 @@ import java.io.IOException;
 @RestController
 public class JsonValidatorController implements ErrorController {
     private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String JSON_UTF8_CONTENT_TYPE = "application/json;charset=UTF-8";
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
     private static final String ERROR_PATH = "/error";
     private static final String SCHEMA_PATH = "/schema";
     private static final String VALIDATE_PATH = "/validate";
+    private static final String BATCH_PATH = "/batch";
+    private static final String CHANGES_PATH = "/changes";
+    private static final int MAX_CHANGES_TIMEOUT = 60;
+    private static final int BATCH_FLUSH_RESULTS = 64;
+    private static final long BATCH_FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BATCH_MAX_BACKOFF = 100;
+    private static final String INVALID_DOCUMENT_MESSAGE = "Document does not conform to the schema";
+
+    private static final JsonNodeReader DOCUMENT_READER = new JsonNodeReader();
+    private static final ObjectMapper BATCH_MAPPER = JacksonUtils.newMapper()
+            .disable(SerializationFeature.INDENT_OUTPUT, SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    @Autowired
+    private SchemaStore schemaStore;
+
+    @Autowired
+    private SchemaCache schemaCache;
+
+    @Autowired
+    private ValidatorMetrics metrics;
+
+    @Autowired
+    private ValidationExecutor validationExecutor;
 
     @Autowired
-    private DatabaseProvider databaseProvider;
+    private ValidationResultCache resultCache;
+
+    @Autowired
+    private SchemaChangeFeed changeFeed;
+
+    @Value("${schema.regex.reject-unsafe:true}")
+    private boolean rejectUnsafeRegex;
+
+    @Value("${schema.regex.time-limit:0}")
+    private long regexTimeLimit;
 
     /**
      * Creates a {@link JsonValidatorResponse} instance from the given parameters and returns it as a JSON string.
@@ -53,6 +112,24 @@ public class JsonValidatorController implements ErrorController {
         return new JsonValidatorResponse(action, id, status, message).toJsonString();
     }
 
+    /**
+     * Converts the messages of a failed validation into structured errors.
+     *
+     * @param report The validation report.
+     * @param mode   The validation mode.
+     * @return The validation errors, or null in {@link ValidationMode#BOOLEAN} mode.
+     */
+    private static List<ValidationError> reportErrors(ProcessingReport report, ValidationMode mode) {
+        if (mode == ValidationMode.BOOLEAN) {
+            return null;
+        }
+        List<ValidationError> errors = new ArrayList<>();
+        for (ProcessingMessage message : report) {
+            errors.add(ValidationError.fromMessage(message));
+        }
+        return errors;
+    }
+
     /**
      * The error mapping - catches HTTP errors (404/500 etc.) generally caused by invalid request URLs/parameters,
      * and wraps their error code in a {@link JsonValidatorResponse}.
@@ -69,114 +146,984 @@ public class JsonValidatorController implements ErrorController {
 
     /**
      * Downloads a JSON schema with a unique identifier.
+     * The stored schema is transcoded from its binary form straight into the response, along with its ETag.
+     * If the ETag matches the If-None-Match header, only HTTP 304 is returned, without a body.
      *
-     * @param id The unique identifier of the JSON schema.
-     * @return the schema's JSON string if it exists and could be successfully retrieved;
-     * otherwise, a JSON string representation of a {@link JsonValidatorResponse} containing error details
+     * @param id          The unique identifier of the JSON schema.
+     * @param pretty      If set to 1, the schema is pretty-printed (otherwise it is returned as compact JSON)
+     * @param ifNoneMatch The ETags of the schema versions the client already has, if any.
+     * @param response    The HTTP response the schema is written to - either the schema's JSON if it exists and could be
+     *                    successfully retrieved, or a JSON representation of a {@link JsonValidatorResponse} containing error details
+     * @throws IOException if the response can't be written.
      */
-    @RequestMapping(method = RequestMethod.GET, value = SCHEMA_PATH + "/{SCHEMAID}", produces = JSON_CONTENT_TYPE)
-    public String downloadSchema(@PathVariable(value = "SCHEMAID") String id) {
-        try {
-            // Fetch the schema from the database
-            byte[] schemaBytes = databaseProvider.get(id.getBytes());
+    @RequestMapping(method = RequestMethod.GET, value = SCHEMA_PATH + "/{SCHEMAID}", produces = JSON_UTF8_CONTENT_TYPE)
+    public void downloadSchema(@PathVariable(value = "SCHEMAID") String id,
+                               @RequestParam(required = false, defaultValue = "0") int pretty,
+                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                               HttpServletResponse response) throws IOException {
+        long startTime = System.nanoTime();
 
-            if (schemaBytes == null) {
-                return responseAsString("downloadSchema", id, "error",
-                        String.format("Schema with id %s doesn't exist", id));
-            }
+        String error;
+        try (ValidatorMetrics.Sample ignored = metrics.stage("downloadSchema", "transcode")) {
+            SchemaStore.StoredSchema schema = schemaStore.read(id);
+            if (schema != null) {
+                response.setHeader(HttpHeaders.ETAG, schema.getEtag());
+                if (ifNoneMatch != null && schema.matches(ifNoneMatch, true)) {
+                    response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                    metrics.request("downloadSchema", id, "notModified", startTime);
+                    return;
+                }
 
-            // Convert it to a string and return
-            return new String(schemaBytes);
+                // Transcode the schema from the database into the response
+                response.setContentType(JSON_UTF8_CONTENT_TYPE);
+                schema.writeJson(response.getOutputStream(), pretty == 1);
+                metrics.request("downloadSchema", id, "success", startTime);
+                return;
+            }
+            metrics.error("downloadSchema", "notFound");
+            error = String.format("Schema with id %s doesn't exist", id);
         } catch (DatabaseProviderException e) {
-            return responseAsString("downloadSchema", id, "error",
-                    String.format("Database exception: %s", e.getMessage()));
+            metrics.error("downloadSchema", "database");
+            error = String.format("Database exception: %s", e.getMessage());
+        } catch (IOException e) {
+            metrics.error("downloadSchema", "json");
+            error = String.format("Exception while processing JSON: %s", e.getMessage());
         }
+        response.setContentType(JSON_UTF8_CONTENT_TYPE);
+        response.getOutputStream().write(responseAsString("downloadSchema", id, "error", error).getBytes(StandardCharsets.UTF_8));
+        metrics.request("downloadSchema", null, "error", startTime);
     }
 
     /**
      * Uploads a JSON schema with a unique identifier.
+     * With an If-Match header, the schema is only stored if the current schema's ETag matches it; the check and the
+     * write are atomic, so concurrent uploads can't overwrite each other unnoticed.
+     * Schemas with regular expressions which may take exponential time to match (see {@link RegexAnalyzer}) are
+     * rejected, or only reported in the message of the response if schema.regex.reject-unsafe is false. While
+     * schema.regex.time-limit is set, so are schemas with regular expressions which can't be matched within it (see
+     * {@link RegexAnalyzer#unboundedPatterns(JsonNode)}).
      *
      * @param id       The unique identifier of the JSON schema.
      * @param override If set to 1, existing schemas will be overwritten (otherwise an error is returned)
-     * @param schema   The JSON schema.
-     * @return a JSON string representation of a {@link JsonValidatorResponse} either indicating a successful upload or containing error details
+     * @param ifMatch  The ETags of the schema versions which may be overwritten, if any (implies override).
+     * @param schema   The JSON schema, read straight from the request body.
+     * @return a JSON string representation of a {@link JsonValidatorResponse} either indicating a successful upload or
+     * containing error details, along with the new ETag of the schema (or HTTP 412 if If-Match doesn't match).
+     */
+    @RequestMapping(method = RequestMethod.POST, value = SCHEMA_PATH + "/{SCHEMAID}", consumes = JSON_CONTENT_TYPE, produces = JSON_UTF8_CONTENT_TYPE)
+    public ResponseEntity<String> uploadSchema(@PathVariable(value = "SCHEMAID") String id,
+                                               @RequestParam(required = false, defaultValue = "0") int override,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               InputStream schema) {
+        long startTime = System.nanoTime();
+        ResponseEntity<String> response = upload(id, override, ifMatch, schema);
+        // Only successful uploads carry the new ETag, failed ones are recorded without the identifier
+        if (response.getHeaders().getETag() != null) {
+            metrics.request("uploadSchema", id, "success", startTime);
+        } else {
+            metrics.request("uploadSchema", null, "error", startTime);
+        }
+        return response;
+    }
+
+    private ResponseEntity<String> upload(String id, int override, String ifMatch, InputStream schema) {
+        try {
+            // Fail early without parsing the schema, the condition is checked again when storing it
+            if (ifMatch == null && override != 1 && schemaStore.exists(id)) {
+                return uploadExists(id);
+            }
+
+            // Check if the schema is valid JSON (but not necessarily a valid schema)
+            JsonNode tree;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("uploadSchema", "parse")) {
+                tree = SchemaStore.parseJson(schema);
+            } catch (IOException e) {
+                metrics.error("uploadSchema", "json");
+                return ResponseEntity.ok(responseAsString("uploadSchema", id, "error",
+                        String.format("Invalid JSON: %s", e.getMessage())));
+            }
+
+            // Check the regular expressions for catastrophic backtracking
+            Set<String> unsafePatterns;
+            Set<String> unboundedPatterns;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("uploadSchema", "analyze")) {
+                unsafePatterns = RegexAnalyzer.unsafePatterns(tree);
+                unboundedPatterns = regexTimeLimit > 0 ? RegexAnalyzer.unboundedPatterns(tree) : Collections.emptySet();
+            }
+            if (!unsafePatterns.isEmpty() && rejectUnsafeRegex) {
+                metrics.error("uploadSchema", "regex");
+                return ResponseEntity.ok(responseAsString("uploadSchema", id, "error", unsafePatternsMessage(id, unsafePatterns)));
+            }
+            if (!unboundedPatterns.isEmpty()) {
+                metrics.error("uploadSchema", "regex");
+                return ResponseEntity.ok(responseAsString("uploadSchema", id, "error",
+                        unboundedPatternsMessage(id, unboundedPatterns)));
+            }
+
+            // Upload the schema
+            SchemaStore.StoredSchema stored;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("uploadSchema", "store")) {
+                stored = schemaStore.put(id, tree, override == 1, ifMatch);
+            }
+            if (stored == null) {
+                if (ifMatch == null) {
+                    return uploadExists(id);
+                }
+                metrics.error("uploadSchema", "precondition");
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(responseAsString("uploadSchema", id, "error",
+                        String.format("Schema with id %s doesn't match %s", id, ifMatch)));
+            }
+            schemaCache.invalidate(id);
+            return ResponseEntity.ok()
+                    .eTag(stored.getEtag())
+                    .body(responseAsString("uploadSchema", id, "success",
+                            unsafePatterns.isEmpty() ? null : unsafePatternsMessage(id, unsafePatterns)));
+        } catch (DatabaseProviderException e) {
+            metrics.error("uploadSchema", "database");
+            return ResponseEntity.ok(responseAsString("uploadSchema", id, "error",
+                    String.format("Database exception: %s", e.getMessage())));
+        } catch (IOException e) {
+            metrics.error("uploadSchema", "json");
+            return ResponseEntity.ok(responseAsString("uploadSchema", id, "error",
+                    String.format("Exception while storing JSON: %s", e.getMessage())));
+        }
+    }
+
+    private static String unsafePatternsMessage(String id, Set<String> unsafePatterns) {
+        return String.format("Schema with id %s uses regular expressions which may take exponential time to match: %s",
+                id, unsafePatterns);
+    }
+
+    private static String unboundedPatternsMessage(String id, Set<String> unboundedPatterns) {
+        return String.format("Schema with id %s uses regular expressions which can't be matched within the time limit: %s",
+                id, unboundedPatterns);
+    }
+
+    private ResponseEntity<String> uploadExists(String id) {
+        metrics.error("uploadSchema", "exists");
+        return ResponseEntity.ok(responseAsString("uploadSchema", id, "error",
+                String.format("Schema with id %s already exists (use %s/SCHEMAID?override=1 to overwrite)", id, SCHEMA_PATH)));
+    }
+
+    /**
+     * Exports all the stored JSON schemas.
+     * The schemas are streamed as newline-delimited JSON, one {"id": ..., "schema": ...} object per line.
+     * If an error occurs, a {@link JsonValidatorResponse} containing error details is written as the last line.
+     *
+     * @param response The HTTP response the schemas are written to.
+     * @throws IOException if the response can't be written.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = SCHEMA_PATH, produces = NDJSON_CONTENT_TYPE)
+    public void exportSchemas(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        OutputStream out = response.getOutputStream();
+
+        String error;
+        try (ValidatorMetrics.Sample ignored = metrics.stage("exportSchemas", "transcode")) {
+            schemaStore.writeAllJson(out);
+            return;
+        } catch (DatabaseProviderException e) {
+            metrics.error("exportSchemas", "database");
+            error = String.format("Database exception: %s", e.getMessage());
+        } catch (IOException e) {
+            metrics.error("exportSchemas", "json");
+            error = String.format("Exception while processing JSON: %s", e.getMessage());
+        }
+        try (JsonGenerator generator = BATCH_MAPPER.getFactory().createGenerator(out)) {
+            writeBatchResult(generator, new JsonValidatorResponse("exportSchemas", null, "error", error));
+        }
+    }
+
+    /**
+     * Imports several JSON schemas at once.
+     * The schemas are read as newline-delimited JSON, one {"id": ..., "schema": ...} object per line (the format of
+     * {@link #exportSchemas}). Lines are parsed in parallel, and the schemas are stored in a single atomic batch -
+     * if any line is invalid, no schema is stored.
+     *
+     * @param override If set to 1, existing schemas will be overwritten (otherwise an error is returned)
+     * @param body     The request body.
+     * @return a JSON string representation of a {@link JsonValidatorResponse} either indicating a successful import or containing error details
      */
-    @RequestMapping(method = RequestMethod.POST, value = SCHEMA_PATH + "/{SCHEMAID}", consumes = JSON_CONTENT_TYPE, produces = JSON_CONTENT_TYPE)
-    public String uploadSchema(@PathVariable(value = "SCHEMAID") String id,
-                               @RequestParam(required = false, defaultValue = "0") int override,
-                               @RequestBody String schema) {
+    @RequestMapping(method = RequestMethod.POST, value = SCHEMA_PATH, consumes = NDJSON_CONTENT_TYPE, produces = JSON_UTF8_CONTENT_TYPE)
+    public String importSchemas(@RequestParam(required = false, defaultValue = "0") int override,
+                                InputStream body) {
         try {
-            if (override == 1 || databaseProvider.get(id.getBytes()) == null) {
-                // Check if the schema is valid JSON (but not necessarily a valid schema)
-                ObjectMapper mapper = new ObjectMapper();
-                String prettySchema;
+            Map<String, JsonNode> schemas;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("importSchemas", "parse")) {
+                schemas = parseImport(ByteStreams.toByteArray(body));
+            } catch (IOException e) {
+                metrics.error("importSchemas", "json");
+                return responseAsString("importSchemas", null, "error", String.format("Invalid JSON: %s", e.getMessage()));
+            }
+
+            for (Map.Entry<String, JsonNode> schema : schemas.entrySet()) {
+                Set<String> unsafePatterns = rejectUnsafeRegex ? RegexAnalyzer.unsafePatterns(schema.getValue())
+                        : Collections.emptySet();
+                if (!unsafePatterns.isEmpty()) {
+                    metrics.error("importSchemas", "regex");
+                    return responseAsString("importSchemas", null, "error",
+                            unsafePatternsMessage(schema.getKey(), unsafePatterns));
+                }
+                Set<String> unboundedPatterns = regexTimeLimit > 0 ? RegexAnalyzer.unboundedPatterns(schema.getValue())
+                        : Collections.emptySet();
+                if (!unboundedPatterns.isEmpty()) {
+                    metrics.error("importSchemas", "regex");
+                    return responseAsString("importSchemas", null, "error",
+                            unboundedPatternsMessage(schema.getKey(), unboundedPatterns));
+                }
+            }
+
+            List<String> existing;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("importSchemas", "store")) {
+                existing = schemaStore.putAll(schemas, override == 1);
+            }
+            if (!existing.isEmpty()) {
+                metrics.error("importSchemas", "exists");
+                return responseAsString("importSchemas", null, "error",
+                        String.format("Schemas with ids %s already exist (use %s?override=1 to overwrite)", existing, SCHEMA_PATH));
+            }
+            for (String id : schemas.keySet()) {
+                schemaCache.invalidate(id);
+            }
+            return responseAsString("importSchemas", null, "success", String.format("Imported %d schemas", schemas.size()));
+        } catch (DatabaseProviderException e) {
+            metrics.error("importSchemas", "database");
+            return responseAsString("importSchemas", null, "error", String.format("Database exception: %s", e.getMessage()));
+        } catch (IOException e) {
+            metrics.error("importSchemas", "json");
+            return responseAsString("importSchemas", null, "error", String.format("Exception while storing JSON: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Splits an import into lines and parses them in parallel.
+     *
+     * @param body The newline-delimited JSON import.
+     * @return The JSON schemas by their unique identifiers, in the order of the import.
+     * @throws IOException if a line is not valid JSON, not an {"id": ..., "schema": ...} object, or repeats an identifier.
+     */
+    private static Map<String, JsonNode> parseImport(byte[] body) throws IOException {
+        // Raw newlines can't appear inside JSON values, so the body can be split without tokenizing it
+        List<int[]> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= body.length; i++) {
+            if (i == body.length || body[i] == '\n') {
+                lines.add(new int[]{start, i - start});
+                start = i + 1;
+            }
+        }
+
+        JsonNode[] nodes = new JsonNode[lines.size()];
+        try {
+            IntStream.range(0, lines.size()).parallel().forEach(line -> {
+                int[] range = lines.get(line);
+                if (isBlank(body, range[0], range[1])) {
+                    return;
+                }
                 try {
-                    JsonNode tree = mapper.readTree(schema);
-                    prettySchema = mapper.writer().withDefaultPrettyPrinter().writeValueAsString(tree);
+                    nodes[line] = SchemaStore.parseJson(body, range[0], range[1]);
+                } catch (JsonProcessingException e) {
+                    throw new UncheckedIOException(new IOException(
+                            String.format("line %d: %s", line + 1, e.getOriginalMessage()), e));
                 } catch (IOException e) {
-                    return responseAsString("uploadSchema", id, "error",
-                            String.format("Invalid JSON: %s", e.getMessage()));
+                    throw new UncheckedIOException(e);
                 }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
 
-                // Upload the schema
-                databaseProvider.put(id.getBytes(), prettySchema.getBytes());
-                return responseAsString("uploadSchema", id, "success", null);
-            } else {
-                return responseAsString("uploadSchema", id, "error",
-                        String.format("Schema with id %s already exists (use %s/SCHEMAID?override=1 to overwrite)", id, SCHEMA_PATH));
+        Map<String, JsonNode> schemas = new LinkedHashMap<>();
+        for (int line = 0; line < nodes.length; line++) {
+            JsonNode node = nodes[line];
+            if (node == null) {
+                continue;
+            }
+            JsonNode id = node.get("id");
+            JsonNode schema = node.get("schema");
+            if (id == null || !id.isTextual() || id.textValue().isEmpty() || schema == null) {
+                throw new IOException(String.format("line %d: expected an {\"id\": ..., \"schema\": ...} object", line + 1));
+            }
+            if (schemas.put(id.textValue(), schema) != null) {
+                throw new IOException(String.format("line %d: duplicate id %s", line + 1, id.textValue()));
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * Checks whether a part of a buffer is blank.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the part.
+     * @param length The length of the part.
+     * @return true if the part contains only whitespace.
+     */
+    private static boolean isBlank(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (!Character.isWhitespace(buffer[i])) {
+                return false;
             }
-        } catch (DatabaseProviderException e) {
-            return responseAsString("uploadSchema", id, "error",
-                    String.format("Database exception: %s", e.getMessage()));
         }
+        return true;
+    }
+
+    /**
+     * Lists the schemas written after a given sequence number of the change log, so other nodes can keep their copies
+     * and caches up to date. If no schema has been written since, the request waits (without holding a thread) until
+     * one is, or until the timeout expires.
+     * <p>
+     * The response holds the changes in sequence order, and the sequence number to poll from next. If the changes
+     * after the given sequence number have been discarded from the log (or are from a different database), the
+     * response is an error carrying the latest sequence number: the caller should then resynchronize with
+     * GET /schema and poll from that sequence number.
+     *
+     * @param since   The sequence number of the last change already seen (0, the default, lists all retained changes)
+     * @param limit   The maximum number of changes returned (1000 by default)
+     * @param timeout How long to wait for a change, in seconds (25 by default, at most 60; 0 doesn't wait)
+     * @return a future JSON string representation of a {@link JsonValidatorResponse} listing the changes or containing error details
+     */
+    @RequestMapping(method = RequestMethod.GET, value = CHANGES_PATH, produces = JSON_UTF8_CONTENT_TYPE)
+    public CompletableFuture<ResponseEntity<String>> changes(@RequestParam(required = false, defaultValue = "0") long since,
+                                                             @RequestParam(required = false, defaultValue = "1000") int limit,
+                                                             @RequestParam(required = false, defaultValue = "25") int timeout) {
+        if (since < 0 || limit < 1) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(responseAsString("changes", null, "error",
+                    "since must not be negative and limit must be positive")));
+        }
+
+        long timeoutMillis = Math.max(0, Math.min(timeout, MAX_CHANGES_TIMEOUT)) * 1000L;
+        return changeFeed.changes(since, limit, timeoutMillis).handle((changes, e) -> {
+            if (e != null) {
+                return changesFailed(e);
+            }
+            try {
+                if (changes == null) {
+                    metrics.error("changes", "reset");
+                    long latest = changeFeed.latestSequence();
+                    return ResponseEntity.ok(new JsonValidatorResponse("changes", "error",
+                            String.format("Changes since %d are no longer available (resynchronize with GET %s, then poll since %d)",
+                                    since, SCHEMA_PATH, latest), latest, null).toJsonString());
+                }
+                long sequence = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSequence();
+                return ResponseEntity.ok(new JsonValidatorResponse("changes", "success", null, sequence, changes).toJsonString());
+            } catch (DatabaseProviderException ex) {
+                metrics.error("changes", "database");
+                return ResponseEntity.ok(responseAsString("changes", null, "error",
+                        String.format("Database exception: %s", ex.getMessage())));
+            }
+        });
+    }
+
+    /**
+     * Answers a poll of the change feed which failed - on a database error, or if the wait was cut short.
+     *
+     * @param e The failure of the poll, possibly wrapped in a {@link CompletionException}.
+     * @return The error response.
+     */
+    private ResponseEntity<String> changesFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof DatabaseProviderException) {
+            metrics.error("changes", "database");
+            return ResponseEntity.ok(responseAsString("changes", null, "error",
+                    String.format("Database exception: %s", cause.getMessage())));
+        }
+        metrics.error("changes", "failed");
+        return ResponseEntity.ok(responseAsString("changes", null, "error",
+                String.format("Changes couldn't be listed: %s", cause)));
     }
 
     /**
      * Validate a JSON document against a JSON schema.
+     * <p>
+     * The document is read, parsed and validated by the {@link ValidationExecutor}. If the executor is too busy, the
+     * request is rejected with HTTP 429 (Too Many Requests) and a Retry-After header before the body is read.
+     * With stream=1, the document is instead validated while it is read from the request body, without being parsed
+     * into a tree (see {@link StreamingValidator}), and the result cache isn't used.
      *
-     * @param id   The unique identifier of the JSON schema.
-     * @param json The JSON document.
-     * @return a JSON string representation of a {@link JsonValidatorResponse} either indicating a successful validation or containing error details
+     * @param id        The unique identifier of the JSON schema.
+     * @param mode      The validation mode - full (default), failFast or boolean (see {@link ValidationMode})
+     * @param maxErrors The number of errors after which validation stops in full mode (0, the default, collects all errors)
+     * @param stream    If set to 1, the document is validated while it is read.
+     * @param json      The JSON document, read straight from the request body.
+     * @return a future JSON string representation of a {@link JsonValidatorResponse} either indicating a successful validation or containing error details
      */
-    @RequestMapping(method = RequestMethod.POST, value = VALIDATE_PATH + "/{SCHEMAID}", consumes = JSON_CONTENT_TYPE, produces = JSON_CONTENT_TYPE)
-    public String validateDocument(@PathVariable(value = "SCHEMAID") String id,
-                                   @RequestBody String json) {
+    @RequestMapping(method = RequestMethod.POST, value = VALIDATE_PATH + "/{SCHEMAID}", consumes = JSON_CONTENT_TYPE, produces = JSON_UTF8_CONTENT_TYPE)
+    public CompletableFuture<ResponseEntity<String>> validateDocument(@PathVariable(value = "SCHEMAID") String id,
+                                                                      @RequestParam(required = false, defaultValue = "full") String mode,
+                                                                      @RequestParam(required = false, defaultValue = "0") int maxErrors,
+                                                                      @RequestParam(required = false, defaultValue = "0") int stream,
+                                                                      InputStream json) {
+        long startTime = System.nanoTime();
+        AtomicBoolean schemaFound = new AtomicBoolean();
+        CompletableFuture<JsonValidatorResponse> response;
         try {
-            // Fetch the schema from the database
-            byte[] schemaBytes = databaseProvider.get(id.getBytes());
+            response = validate(id, mode, maxErrors, stream == 1, json, schemaFound);
+        } catch (RejectedExecutionException e) {
+            metrics.error("validateDocument", "rejected");
+            metrics.request("validateDocument", schemaFound.get() ? id : null, "rejected", startTime);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(validationExecutor.getRetryAfter()))
+                    .body(responseAsString("validateDocument", id, "error", e.getMessage())));
+        }
+
+        return response.thenApply(result -> {
+            metrics.request("validateDocument", schemaFound.get() ? id : null, result.getStatus(), startTime);
+            return ResponseEntity.ok(result.toJsonString());
+        });
+    }
+
+    private CompletableFuture<JsonValidatorResponse> validate(String id, String modeName, int maxErrors, boolean stream,
+                                                              InputStream json, AtomicBoolean schemaFound) {
+        ValidationMode mode;
+        try {
+            mode = ValidationMode.fromString(modeName);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateDocument", id, "error", e.getMessage()));
+        }
 
-            if (schemaBytes == null) {
-                return responseAsString("validateDocument", id, "error",
-                        String.format("Schema with id %s doesn't exist", id));
+        try {
+            // Fetch the compiled schema from the cache, reading its version first so it can't be newer than the schema
+            long version = schemaCache.version(id);
+            CompiledSchema schema;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("validateDocument", "schema")) {
+                schema = schemaCache.get(id);
             }
 
-            String schemaString = new String(schemaBytes);
+            if (schema == null) {
+                metrics.error("validateDocument", "notFound");
+                return CompletableFuture.completedFuture(new JsonValidatorResponse("validateDocument", id, "error",
+                        String.format("Schema with id %s doesn't exist", id)));
+            }
+            schemaFound.set(true);
 
-            // Convert the schema and the document to Json nodes
-            JsonNode schemaNode = JsonLoader.fromString(schemaString);
-            JsonNode documentNode = JsonLoader.fromString(json);
+            if (stream) {
+                // The request body stays readable until the asynchronous response completes
+                return validationExecutor.submit(id, () -> validateStream(schema, mode, maxErrors, id, json));
+            }
 
-            // Validate the document against the schema
-            JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-            JsonSchema schema = factory.getJsonSchema(schemaNode);
-            ProcessingReport report = schema.validate(documentNode);
+            // The body is read by the worker too, so a busy executor rejects the request before any work is done on it
+            return validationExecutor.submit(id, () -> validateBody(schema, version, mode, maxErrors, id, json));
+        } catch (DatabaseProviderException e) {
+            metrics.error("validateDocument", "database");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Database exception: %s", e.getMessage())));
+        } catch (IOException e) {
+            metrics.error("validateDocument", "json");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Exception while processing JSON: %s", e.getMessage())));
+        } catch (ProcessingException e) {
+            metrics.error("validateDocument", "schema");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Exception while processing JSON schema: %s", e.getMessage())));
+        }
+    }
 
-            if (report.isSuccess()) {
-                return responseAsString("validateDocument", id, "success", null);
-            } else {
-                StringBuilder messageBuilder = new StringBuilder();
-                for (ProcessingMessage message : report) {
-                    messageBuilder.append(message);
+    /**
+     * Reads a document from the request body and validates it against a compiled schema, answering documents which
+     * have been validated before from the result cache. Runs on a {@link ValidationExecutor} thread.
+     *
+     * @param schema    The compiled JSON schema.
+     * @param version   The version of the JSON schema, read before it was compiled.
+     * @param mode      The validation mode.
+     * @param maxErrors The number of errors after which validation stops in full mode.
+     * @param id        The unique identifier of the JSON schema.
+     * @param json      The JSON document.
+     * @return The {@link JsonValidatorResponse} for the document.
+     */
+    private JsonValidatorResponse validateBody(CompiledSchema schema, long version, ValidationMode mode, int maxErrors,
+                                               String id, InputStream json) {
+        try {
+            if (!resultCache.isEnabled()) {
+                // Convert the document to a Json node and validate it against the schema
+                JsonNode documentNode;
+                try (ValidatorMetrics.Sample ignored = metrics.stage("validateDocument", "parse")) {
+                    documentNode = DOCUMENT_READER.fromInputStream(json);
+                }
+                return validate("validateDocument", schema, mode, maxErrors, id, documentNode);
+            }
+
+            // Documents which have been validated before are answered without parsing them
+            byte[] document = ByteStreams.toByteArray(json);
+            ValidationResultCache.Key key = resultCache.key(id, version, document, mode, maxErrors);
+            JsonValidatorResponse cached = resultCache.get(key);
+            if (cached != null) {
+                if (!"success".equals(cached.getStatus())) {
+                    metrics.error("validateDocument", "invalid");
+                }
+                return cached;
+            }
+
+            JsonNode documentNode;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("validateDocument", "parse")) {
+                documentNode = DOCUMENT_READER.fromInputStream(new ByteArrayInputStream(document));
+            }
+            JsonValidatorResponse response = validate("validateDocument", schema, mode, maxErrors, id, documentNode);
+            // Only the outcome of a validation is cached, not failures to process the schema
+            if ("success".equals(response.getStatus()) || INVALID_DOCUMENT_MESSAGE.equals(response.getMessage())) {
+                resultCache.put(key, response);
+            }
+            return response;
+        } catch (IOException e) {
+            metrics.error("validateDocument", "json");
+            return new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Exception while processing JSON: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Validates a parsed document against a compiled schema. Runs on a {@link ValidationExecutor} thread.
+     *
+     * @param action       A short name for the action (validateDocument, validateMany etc.)
+     * @param schema       The compiled JSON schema.
+     * @param mode         The validation mode.
+     * @param maxErrors    The number of errors after which validation stops in full mode.
+     * @param id           The unique identifier of the JSON schema.
+     * @param documentNode The JSON document.
+     * @return The {@link JsonValidatorResponse} for the document.
+     */
+    private JsonValidatorResponse validate(String action, CompiledSchema schema, ValidationMode mode, int maxErrors,
+                                           String id, JsonNode documentNode) {
+        try {
+            ProcessingReport report;
+            try (ValidatorMetrics.Sample ignored = metrics.stage(action, "validate")) {
+                report = schema.validate(documentNode, mode, maxErrors);
+            }
+            return reportResponse(action, id, report, mode);
+        } catch (ProcessingException e) {
+            metrics.error(action, "schema");
+            return new JsonValidatorResponse(action, id, "error", String.format("Exception while processing JSON schema: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Validates a document against a compiled schema while it is read. Runs on a {@link ValidationExecutor} thread.
+     *
+     * @param schema    The compiled JSON schema.
+     * @param mode      The validation mode.
+     * @param maxErrors The number of errors after which validation stops in full mode.
+     * @param id        The unique identifier of the JSON schema.
+     * @param json      The JSON document.
+     * @return The {@link JsonValidatorResponse} for the document.
+     */
+    private JsonValidatorResponse validateStream(CompiledSchema schema, ValidationMode mode, int maxErrors,
+                                                 String id, InputStream json) {
+        try {
+            ProcessingReport report;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("validateDocument", "stream")) {
+                report = schema.validate(json, mode, maxErrors);
+            }
+            return reportResponse("validateDocument", id, report, mode);
+        } catch (IOException e) {
+            metrics.error("validateDocument", "json");
+            return new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Exception while processing JSON: %s", e.getMessage()));
+        } catch (ProcessingException e) {
+            metrics.error("validateDocument", "schema");
+            return new JsonValidatorResponse("validateDocument", id, "error",
+                    String.format("Exception while processing JSON schema: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Converts the report of a validation into a {@link JsonValidatorResponse}.
+     *
+     * @param action A short name for the action (validateDocument, validateMany etc.)
+     * @param id     The unique identifier of the JSON schema.
+     * @param report The validation report.
+     * @param mode   The validation mode.
+     * @return The {@link JsonValidatorResponse} for the document.
+     */
+    private JsonValidatorResponse reportResponse(String action, String id, ProcessingReport report, ValidationMode mode) {
+        if (report.isSuccess()) {
+            return new JsonValidatorResponse(action, id, "success", null);
+        }
+        metrics.error(action, "invalid");
+        return new JsonValidatorResponse(action, id, "error", INVALID_DOCUMENT_MESSAGE, reportErrors(report, mode));
+    }
+
+    /**
+     * Validate a JSON document against several JSON schemas at once.
+     * <p>
+     * The document is read and parsed once by the {@link ValidationExecutor} - under the permits of the first schema -
+     * then validated against every schema in parallel. If the executor is too busy, the request is rejected with
+     * HTTP 429 (Too Many Requests) and a Retry-After header.
+     * If all=1 is used, the request fails as soon as the document fails any of the schemas - validations which haven't
+     * started by then are skipped, and only the finished ones are listed in the results.
+     *
+     * @param ids       The unique identifiers of the JSON schemas.
+     * @param mode      The validation mode - full (default), failFast or boolean (see {@link ValidationMode})
+     * @param maxErrors The number of errors after which validation stops in full mode (0, the default, collects all errors)
+     * @param all       If equal to 1, stop at the first schema the document fails.
+     * @param json      The JSON document, read straight from the request body.
+     * @return a future JSON string representation of a {@link JsonValidatorResponse} listing the result for each schema
+     */
+    @RequestMapping(method = RequestMethod.POST, value = VALIDATE_PATH, consumes = JSON_CONTENT_TYPE, produces = JSON_UTF8_CONTENT_TYPE)
+    public CompletableFuture<ResponseEntity<String>> validateMany(@RequestParam(value = "schemas") List<String> ids,
+                                                                  @RequestParam(required = false, defaultValue = "full") String mode,
+                                                                  @RequestParam(required = false, defaultValue = "0") int maxErrors,
+                                                                  @RequestParam(required = false, defaultValue = "0") int all,
+                                                                  InputStream json) {
+        CompletableFuture<JsonValidatorResponse> response;
+        try {
+            response = validateMany(ids, mode, maxErrors, all == 1, json);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(validateManyRejected(e));
+        }
+        return response.handle((result, e) -> {
+            // The validations are submitted by the worker which parsed the document
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException) {
+                return validateManyRejected((RejectedExecutionException) cause);
+            } else if (cause != null) {
+                throw new CompletionException(cause);
+            }
+            return ResponseEntity.ok(result.toJsonString());
+        });
+    }
+
+    private ResponseEntity<String> validateManyRejected(RejectedExecutionException e) {
+        metrics.error("validateMany", "rejected");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(validationExecutor.getRetryAfter()))
+                .body(new JsonValidatorResponse("validateMany", null, "error", e.getMessage()).toJsonString());
+    }
+
+    private CompletableFuture<JsonValidatorResponse> validateMany(List<String> ids, String modeName, int maxErrors,
+                                                                  boolean allMustPass, InputStream json) {
+        ValidationMode mode;
+        try {
+            mode = ValidationMode.fromString(modeName);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", null, "error", e.getMessage()));
+        }
+
+        try {
+            // Fetch the compiled schemas from the cache, failing straight away if any of them doesn't exist
+            List<CompiledSchema> schemas = new ArrayList<>(ids.size());
+            try (ValidatorMetrics.Sample ignored = metrics.stage("validateMany", "schema")) {
+                for (String id : ids) {
+                    CompiledSchema schema = schemaCache.get(id);
+                    if (schema == null) {
+                        metrics.error("validateMany", "notFound");
+                        return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", id, "error",
+                                String.format("Schema with id %s doesn't exist", id)));
+                    }
+                    schemas.add(schema);
+                }
+            }
+
+            // The body is read by a worker too, so a busy executor rejects the request before any work is done on it
+            return validationExecutor.submit(ids.isEmpty() ? "" : ids.get(0), () -> {
+                JsonNode documentNode;
+                try (ValidatorMetrics.Sample ignored = metrics.stage("validateMany", "parse")) {
+                    documentNode = DOCUMENT_READER.fromInputStream(json);
+                } catch (IOException e) {
+                    metrics.error("validateMany", "json");
+                    return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", null, "error",
+                            String.format("Exception while processing JSON: %s", e.getMessage())));
+                }
+                return validateAll(ids, schemas, mode, maxErrors, allMustPass, documentNode);
+            }).thenCompose(result -> result);
+        } catch (DatabaseProviderException e) {
+            metrics.error("validateMany", "database");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", null, "error",
+                    String.format("Database exception: %s", e.getMessage())));
+        } catch (IOException e) {
+            metrics.error("validateMany", "json");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", null, "error",
+                    String.format("Exception while processing JSON: %s", e.getMessage())));
+        } catch (ProcessingException e) {
+            metrics.error("validateMany", "schema");
+            return CompletableFuture.completedFuture(new JsonValidatorResponse("validateMany", null, "error",
+                    String.format("Exception while processing JSON schema: %s", e.getMessage())));
+        }
+    }
+
+    /**
+     * Validates a parsed document against several compiled schemas in parallel. Runs on a {@link ValidationExecutor}
+     * thread.
+     *
+     * @param ids          The unique identifiers of the JSON schemas.
+     * @param schemas      The compiled JSON schemas, in the same order.
+     * @param mode         The validation mode.
+     * @param maxErrors    The number of errors after which validation stops in full mode.
+     * @param allMustPass  Whether to stop at the first schema the document fails.
+     * @param documentNode The JSON document.
+     * @return A future {@link JsonValidatorResponse} listing the result for each schema.
+     * @throws RejectedExecutionException if the executor is too busy to take every validation.
+     */
+    private CompletableFuture<JsonValidatorResponse> validateAll(List<String> ids, List<CompiledSchema> schemas,
+                                                                 ValidationMode mode, int maxErrors,
+                                                                 boolean allMustPass, JsonNode documentNode) {
+        // Validations which haven't started yet are skipped (their result is null) once one has failed
+        AtomicBoolean failed = new AtomicBoolean();
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        List<CompletableFuture<JsonValidatorResponse>> results = new ArrayList<>(ids.size());
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                CompiledSchema schema = schemas.get(i);
+                CompletableFuture<JsonValidatorResponse> result = validationExecutor.submit(id, () -> {
+                    if (allMustPass && failed.get()) {
+                        return null;
+                    }
+                    JsonValidatorResponse response = validate("validateMany", schema, mode, maxErrors, id, documentNode);
+                    if (!"success".equals(response.getStatus())) {
+                        failed.set(true);
+                    }
+                    return response;
+                });
+                result.thenAccept(response -> {
+                    if (response != null && !"success".equals(response.getStatus())) {
+                        firstFailure.complete(null);
+                    }
+                });
+                results.add(result);
+            }
+        } catch (RejectedExecutionException e) {
+            failed.set(true);
+            throw e;
+        }
+
+        CompletableFuture<?> done = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]));
+        if (allMustPass) {
+            done = CompletableFuture.anyOf(done, firstFailure);
+        }
+        return done.thenApply(ignored -> {
+            List<JsonValidatorResponse> finished = new ArrayList<>(results.size());
+            for (CompletableFuture<JsonValidatorResponse> result : results) {
+                JsonValidatorResponse response = result.getNow(null);
+                if (response != null) {
+                    finished.add(response);
                 }
-                return responseAsString("validateDocument", id, "error", messageBuilder.toString());
             }
+            return new JsonValidatorResponse("validateMany", failed.get() ? "error" : "success", finished);
+        });
+    }
+
+    /**
+     * Validate a stream of JSON documents against a JSON schema.
+     * <p>
+     * The request body is either newline-delimited JSON or a single JSON array. Documents are parsed one at a time
+     * as they arrive, and one result line per document is streamed back as newline-delimited JSON, so memory use
+     * doesn't depend on the size of the batch. Results are flushed every {@link #BATCH_FLUSH_RESULTS} documents, every
+     * {@link #BATCH_FLUSH_INTERVAL} nanoseconds, and whenever the body reports that no more input is available (which
+     * decoded bodies never do). A malformed document ends the batch, since the rest of the stream can't be reliably
+     * resynchronized.
+     * <p>
+     * Each document is parsed on the request thread, so that slow clients don't hold a worker, and validated by the
+     * {@link ValidationExecutor}, one after the other. If the executor is too busy to take the first document, the
+     * response is HTTP 429 (Too Many Requests) with a Retry-After header; later documents are retried with a growing
+     * delay for up to the Retry-After period, after which the batch ends with an error result.
+     *
+     * @param id        The unique identifier of the JSON schema.
+     * @param modeName  The validation mode applied to each document - full (default), failFast or boolean
+     * @param maxErrors The number of errors after which validation of a document stops in full mode (0 collects all errors)
+     * @param body      The request body.
+     * @param response  The HTTP response the results are written to.
+     * @throws IOException if the request body can't be read or the response can't be written.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = VALIDATE_PATH + "/{SCHEMAID}" + BATCH_PATH,
+            consumes = {NDJSON_CONTENT_TYPE, JSON_CONTENT_TYPE}, produces = NDJSON_CONTENT_TYPE)
+    public void validateBatch(@PathVariable(value = "SCHEMAID") String id,
+                              @RequestParam(value = "mode", required = false, defaultValue = "full") String modeName,
+                              @RequestParam(required = false, defaultValue = "0") int maxErrors,
+                              InputStream body,
+                              HttpServletResponse response) throws IOException {
+        long startTime = System.nanoTime();
+        response.setContentType(NDJSON_CONTENT_TYPE);
+
+        try (JsonGenerator generator = BATCH_MAPPER.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            AtomicBoolean schemaFound = new AtomicBoolean();
+            String status = validateBatch(id, modeName, maxErrors, body, response, generator, schemaFound);
+            metrics.request("validateBatch", schemaFound.get() ? id : null, status, startTime);
+        }
+    }
+
+    /**
+     * Writes the results of a batch.
+     *
+     * @param id          The unique identifier of the JSON schema.
+     * @param modeName    The validation mode applied to each document.
+     * @param maxErrors   The number of errors after which validation of a document stops in full mode.
+     * @param body        The request body.
+     * @param response    The HTTP response the results are written to.
+     * @param generator   The generator writing to the response.
+     * @param schemaFound Set once the schema is found.
+     * @return The status of the batch - "success" if every document is valid, "error" otherwise.
+     * @throws IOException if the request body can't be read or the response can't be written.
+     */
+    private String validateBatch(String id, String modeName, int maxErrors, InputStream body,
+                                 HttpServletResponse response, JsonGenerator generator, AtomicBoolean schemaFound)
+            throws IOException {
+        ValidationMode mode;
+        try {
+            mode = ValidationMode.fromString(modeName);
+        } catch (IllegalArgumentException e) {
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, "error", e.getMessage()));
+            return "error";
+        }
+
+        CompiledSchema schema;
+        try (ValidatorMetrics.Sample ignored = metrics.stage("validateBatch", "schema")) {
+            schema = schemaCache.get(id);
         } catch (DatabaseProviderException e) {
-            return responseAsString("validateDocument", id, "error", String.format("Database exception: %s", e.getMessage()));
+            metrics.error("validateBatch", "database");
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, "error",
+                    String.format("Database exception: %s", e.getMessage())));
+            return "error";
         } catch (IOException e) {
-            return responseAsString("validateDocument", id, "error", String.format("Exception while processing JSON: %s", e.getMessage()));
+            metrics.error("validateBatch", "json");
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, "error",
+                    String.format("Exception while processing JSON: %s", e.getMessage())));
+            return "error";
         } catch (ProcessingException e) {
-            return responseAsString("validateDocument", id, "error", String.format("Exception while processing JSON schema: %s", e.getMessage()));
+            metrics.error("validateBatch", "schema");
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, "error",
+                    String.format("Exception while processing JSON schema: %s", e.getMessage())));
+            return "error";
+        }
+
+        if (schema == null) {
+            metrics.error("validateBatch", "notFound");
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, "error",
+                    String.format("Schema with id %s doesn't exist", id)));
+            return "error";
         }
+        schemaFound.set(true);
+
+        String status = "success";
+        long index = 0;
+        int unflushed = 0;
+        long lastFlushTime = System.nanoTime();
+        try (JsonParser parser = BATCH_MAPPER.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            boolean isArray = token == JsonToken.START_ARRAY;
+            if (isArray) {
+                token = parser.nextToken();
+            }
+
+            while (token != null && token != JsonToken.END_ARRAY) {
+                long documentIndex = index;
+                JsonNode documentNode;
+                try (ValidatorMetrics.Sample ignored = metrics.stage("validateBatch", "parse")) {
+                    documentNode = BATCH_MAPPER.readTree(parser);
+                }
+
+                JsonValidatorResponse result;
+                try {
+                    result = submitBatchDocument(id, documentIndex == 0,
+                            () -> validateBatchDocument(schema, mode, maxErrors, id, documentIndex, documentNode));
+                } catch (RejectedExecutionException e) {
+                    metrics.error("validateBatch", "rejected");
+                    if (documentIndex == 0) {
+                        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(validationExecutor.getRetryAfter()));
+                    }
+                    writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, documentIndex, "error",
+                            e.getMessage(), null));
+                    return "error";
+                }
+
+                index++;
+                if (!"success".equals(result.getStatus())) {
+                    status = "error";
+                }
+                writeBatchResult(generator, result);
+                long now = System.nanoTime();
+                if (++unflushed == BATCH_FLUSH_RESULTS || now - lastFlushTime >= BATCH_FLUSH_INTERVAL
+                        || body.available() == 0) {
+                    generator.flush();
+                    unflushed = 0;
+                    lastFlushTime = now;
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            metrics.error("validateBatch", "json");
+            writeBatchResult(generator, new JsonValidatorResponse("validateBatch", id, index, "error",
+                    String.format("Exception while processing JSON: %s", e.getOriginalMessage()), null));
+            return "error";
+        }
+        return status;
+    }
+
+    /**
+     * Validates a document of a batch on the {@link ValidationExecutor}. Unless it is the first document, whose
+     * rejection is answered with HTTP 429, a full executor is retried with a doubling delay (up to
+     * {@link #BATCH_MAX_BACKOFF} milliseconds) until the Retry-After period has passed.
+     *
+     * @param id    The unique identifier of the JSON schema.
+     * @param first Whether the document is the first of the batch.
+     * @param task  The validation of the document.
+     * @return The {@link JsonValidatorResponse} for the document.
+     * @throws RejectedExecutionException if the executor doesn't take the document in time.
+     */
+    private JsonValidatorResponse submitBatchDocument(String id, boolean first, Supplier<JsonValidatorResponse> task) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(validationExecutor.getRetryAfter());
+        long backoff = 1;
+        while (true) {
+            try {
+                return validationExecutor.submit(id, task).join();
+            } catch (RejectedExecutionException e) {
+                if (first || System.nanoTime() - deadline >= 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, BATCH_MAX_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Validates a single document of a batch. Runs on a {@link ValidationExecutor} thread.
+     *
+     * @param schema       The compiled JSON schema.
+     * @param mode         The validation mode.
+     * @param maxErrors    The number of errors after which validation stops in full mode.
+     * @param id           The unique identifier of the JSON schema.
+     * @param index        The zero-based position of the document in the batch.
+     * @param documentNode The JSON document.
+     * @return The {@link JsonValidatorResponse} for the document.
+     */
+    private JsonValidatorResponse validateBatchDocument(CompiledSchema schema, ValidationMode mode, int maxErrors,
+                                                        String id, long index, JsonNode documentNode) {
+        try {
+            ProcessingReport report;
+            try (ValidatorMetrics.Sample ignored = metrics.stage("validateBatch", "validate")) {
+                report = schema.validate(documentNode, mode, maxErrors);
+            }
+            if (report.isSuccess()) {
+                return new JsonValidatorResponse("validateBatch", id, index, "success", null, null);
+            } else {
+                metrics.error("validateBatch", "invalid");
+                return new JsonValidatorResponse("validateBatch", id, index, "error", INVALID_DOCUMENT_MESSAGE,
+                        reportErrors(report, mode));
+            }
+        } catch (ProcessingException e) {
+            metrics.error("validateBatch", "schema");
+            return new JsonValidatorResponse("validateBatch", id, index, "error",
+                    String.format("Exception while processing JSON schema: %s", e.getMessage()), null);
+        }
+    }
+
+    /**
+     * Writes a single compact result line of a batch.
+     *
+     * @param generator The generator writing to the response.
+     * @param result    The result to write.
+     * @throws IOException if the response can't be written.
+     */
+    private static void writeBatchResult(JsonGenerator generator, JsonValidatorResponse result) throws IOException {
+        BATCH_MAPPER.writeValue(generator, result);
+        generator.writeRaw('\n');
     }
 
     /**
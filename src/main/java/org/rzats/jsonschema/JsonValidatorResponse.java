@@ -5,17 +5,25 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
+import java.util.List;
+
 /**
  * The POJO class used to store REST API responses.
  * Automatically converted to JSON by Spring Boot.
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class JsonValidatorResponse {
+    private static final ObjectWriter WRITER = new ObjectMapper().writer().withDefaultPrettyPrinter();
+
     private String action;
     private String id;
+    private Long index;
     private String status;
     private String message;
-
+    private List<ValidationError> errors;
+    private List<JsonValidatorResponse> results;
+    private Long sequence;
+    private List<SchemaChange> changes;
 
     /**
      * The class constructor. null parameters are omitted from the JSON representation.
@@ -32,6 +40,62 @@ public class JsonValidatorResponse {
         this.message = message;
     }
 
+    /**
+     * The class constructor for responses with validation errors.
+     *
+     * @param action  A short name for the action (validateDocument, uploadSchema etc.)
+     * @param id      The unique identifier of a JSON schema
+     * @param status  The status of the request - "success" if valid, "error" otherwise
+     * @param message The error message - either for internal exceptions or JSON validation errors
+     * @param errors  The structured JSON validation errors
+     */
+    public JsonValidatorResponse(String action, String id, String status, String message, List<ValidationError> errors) {
+        this(action, id, status, message);
+        this.errors = errors;
+    }
+
+    /**
+     * The class constructor for responses describing one document of a batch.
+     *
+     * @param action  A short name for the action (validateBatch etc.)
+     * @param id      The unique identifier of a JSON schema
+     * @param index   The zero-based position of the document in the batch
+     * @param status  The status of the request - "success" if valid, "error" otherwise
+     * @param message The error message - either for internal exceptions or JSON validation errors
+     * @param errors  The structured JSON validation errors
+     */
+    public JsonValidatorResponse(String action, String id, long index, String status, String message, List<ValidationError> errors) {
+        this(action, id, status, message, errors);
+        this.index = index;
+    }
+
+    /**
+     * The class constructor for responses combining the results of several validations.
+     *
+     * @param action  A short name for the action (validateMany etc.)
+     * @param status  The status of the request - "success" if every validation succeeded, "error" otherwise
+     * @param results The results of the single validations
+     */
+    public JsonValidatorResponse(String action, String status, List<JsonValidatorResponse> results) {
+        this(action, null, status, null);
+        this.results = results;
+    }
+
+    /**
+     * The class constructor for responses of the schema change feed.
+     *
+     * @param action   A short name for the action (changes etc.)
+     * @param status   The status of the request - "success" if the changes are listed, "error" otherwise
+     * @param message  The error message
+     * @param sequence The sequence number to poll the feed from next
+     * @param changes  The changes, or null if they aren't available
+     */
+    public JsonValidatorResponse(String action, String status, String message, long sequence, List<SchemaChange> changes) {
+        this(action, null, status, message);
+        this.sequence = sequence;
+        this.changes = changes;
+    }
+
     public String getAction() {
         return action;
     }
@@ -40,6 +104,10 @@ public class JsonValidatorResponse {
         return id;
     }
 
+    public Long getIndex() {
+        return index;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -48,10 +116,25 @@ public class JsonValidatorResponse {
         return message;
     }
 
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+
+    public List<JsonValidatorResponse> getResults() {
+        return results;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public List<SchemaChange> getChanges() {
+        return changes;
+    }
+
     public String toJsonString() {
-        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
         try {
-            return ow.writeValueAsString(this);
+            return WRITER.writeValueAsString(this);
         } catch (JsonProcessingException e) {
             return String.format("Exception while converting response to string: %s", e.getMessage());
         }
@@ -0,0 +1,146 @@
+package org.rzats.jsonschema;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Dropwizard {@link Reservoir} which records every value into an HdrHistogram (to 2 significant digits), instead
+ * of keeping a sample of them - so the reported tail percentiles, up to the 99.9th, are those of the actual values.
+ * <p>
+ * Values are recorded without locking. Snapshots cover the values recorded during the current and the previous
+ * window of the reservoir, i.e. over the last one to two windows; windows are rotated when snapshots are taken.
+ */
+final class LatencyReservoir implements Reservoir {
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final long windowNanos;
+    private Histogram interval;
+    private Histogram previous = new Histogram(SIGNIFICANT_DIGITS);
+    private Histogram current = new Histogram(SIGNIFICANT_DIGITS);
+    private long windowStart = System.nanoTime();
+    private Snapshot snapshot;
+
+    /**
+     * The class constructor.
+     *
+     * @param window The length of a window.
+     * @param unit   The unit of the window length.
+     */
+    LatencyReservoir(long window, TimeUnit unit) {
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        recorder.recordValue(Math.max(value, 0));
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        long now = System.nanoTime();
+        boolean rotate = now - windowStart >= windowNanos;
+
+        // Snapshots are read once per reported value, so they are reused until something changes
+        if (snapshot != null && interval.getTotalCount() == 0 && !rotate) {
+            return snapshot;
+        }
+
+        current.add(interval);
+        if (rotate) {
+            Histogram oldest = previous;
+            oldest.reset();
+            previous = current;
+            current = oldest;
+            windowStart = now;
+        }
+        Histogram combined = previous.copy();
+        combined.add(current);
+        snapshot = new HistogramSnapshot(combined);
+        return snapshot;
+    }
+
+    /**
+     * A snapshot of the values of a histogram.
+     */
+    private static final class HistogramSnapshot extends Snapshot {
+        private final Histogram histogram;
+
+        private HistogramSnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        /**
+         * @return Every value of the snapshot (as the lowest value equivalent to it), in ascending order.
+         */
+        @Override
+        public long[] getValues() {
+            long[] values = new long[size()];
+            int index = 0;
+            for (HistogramIterationValue value : histogram.recordedValues()) {
+                long count = value.getCountAddedInThisIterationStep();
+                for (long i = 0; i < count && index < values.length; i++) {
+                    values[index++] = histogram.lowestEquivalentValue(value.getValueIteratedTo());
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(histogram.getTotalCount(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Finds the regular expressions of a schema which a backtracking engine may take exponential time to match.
+ * <p>
+ * Exponential backtracking needs a repetition whose body can match the same characters in more than one way, so that
+ * a failing match retries every way of splitting them between iterations. Two shapes are detected, on an
+ * approximation of the characters each part of the expression can match:
+ * <ul>
+ * <li>a repetition containing an unbounded repetition which can match both the rest of the iteration and the start
+ * of the next one, as in {@code (a+)+}, {@code (\w+\s?)*} or {@code (.*a)+} - but not {@code (\w+\.)*}, where a
+ * dot has to follow the letters</li>
+ * <li>an unbounded repetition of alternatives which can start with the same character, as in {@code (a|ab)*} or
+ * {@code (\d|[0-9a-f])+}</li>
+ * </ul>
+ * Expressions which are only slow in polynomial time (such as {@code .*a.*b}) are left to the time budget of the
+ * documents (see {@link RegexBudget}), as are expressions which can't be parsed here - those are reported by the
+ * syntax validation of the schema if they are invalid.
+ */
+public final class RegexAnalyzer {
+    private static final int UNBOUNDED = -1;
+
+    private final String source;
+    private int position;
+    private boolean unsafe;
+
+    private RegexAnalyzer(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Collects the {@code pattern}s and {@code patternProperties} names of a schema which may take exponential time.
+     *
+     * @param schema The JSON schema.
+     * @return The unsafe expressions, sorted.
+     */
+    public static Set<String> unsafePatterns(JsonNode schema) {
+        Set<String> unsafe = new TreeSet<>();
+        collectPatterns(schema, RegexAnalyzer::isUnsafe, unsafe);
+        return unsafe;
+    }
+
+    /**
+     * Collects the {@code pattern}s and {@code patternProperties} names of a schema which aren't matched within the
+     * time budget of the documents, since they are left to the Rhino engine (see {@link EcmaRegex#isBounded()}):
+     * all of them in a draft v3 schema.
+     *
+     * @param schema The JSON schema.
+     * @return The unbounded expressions, sorted.
+     */
+    public static Set<String> unboundedPatterns(JsonNode schema) {
+        Set<String> unbounded = new TreeSet<>();
+        boolean draftV3 = schema.path("$schema").asText().startsWith("http://json-schema.org/draft-03/schema");
+        collectPatterns(schema, source -> draftV3 || !new EcmaRegex(source).isBounded(), unbounded);
+        return unbounded;
+    }
+
+    private static void collectPatterns(JsonNode node, Predicate<String> filter, Set<String> patterns) {
+        JsonNode pattern = node.get("pattern");
+        if (pattern != null && pattern.isTextual() && filter.test(pattern.textValue())) {
+            patterns.add(pattern.textValue());
+        }
+        JsonNode patternProperties = node.get("patternProperties");
+        if (patternProperties != null && patternProperties.isObject()) {
+            Iterator<String> names = patternProperties.fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                if (filter.test(name)) {
+                    patterns.add(name);
+                }
+            }
+        }
+        for (JsonNode child : node) {
+            collectPatterns(child, filter, patterns);
+        }
+    }
+
+    /**
+     * @param source An ECMA 262 expression.
+     * @return true if the expression may take exponential time to match.
+     */
+    public static boolean isUnsafe(String source) {
+        RegexAnalyzer analyzer = new RegexAnalyzer(source);
+        try {
+            analyzer.disjunction();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return analyzer.unsafe;
+    }
+
+    private boolean atEnd() {
+        return position >= source.length();
+    }
+
+    private char peek() {
+        return source.charAt(position);
+    }
+
+    private char peekRequired() {
+        if (atEnd()) {
+            throw new IllegalArgumentException("Unexpected end of expression");
+        }
+        return peek();
+    }
+
+    private char next() {
+        if (atEnd()) {
+            throw new IllegalArgumentException("Unexpected end of expression");
+        }
+        return source.charAt(position++);
+    }
+
+    private Part disjunction() {
+        Part first = alternative();
+        if (atEnd() || peek() != '|') {
+            return first;
+        }
+        Part result = first;
+        boolean ambiguous = false;
+        CharSet starts = first.first.copy();
+        while (!atEnd() && peek() == '|') {
+            position++;
+            Part branch = alternative();
+            ambiguous |= starts.intersects(branch.first);
+            starts.addAll(branch.first);
+            result = result.or(branch);
+        }
+        result.ambiguous = ambiguous;
+        return result;
+    }
+
+    private Part alternative() {
+        Part result = Part.empty();
+        while (!atEnd() && peek() != '|' && peek() != ')') {
+            result = result.then(term());
+        }
+        return result;
+    }
+
+    private Part term() {
+        char c = next();
+        Part atom;
+        switch (c) {
+            case '^':
+            case '$':
+                return Part.empty();
+            case '.':
+                atom = Part.of(CharSet.any());
+                break;
+            case '\\':
+                atom = escape();
+                break;
+            case '[':
+                atom = Part.of(characterClass());
+                break;
+            case '(':
+                atom = group();
+                break;
+            default:
+                atom = Part.of(CharSet.of(c));
+        }
+        return quantifier(atom);
+    }
+
+    private Part escape() {
+        char c = next();
+        switch (c) {
+            case 'b':
+            case 'B':
+                return Part.empty();
+            case 'd':
+                return Part.of(CharSet.digits());
+            case 'D':
+                return Part.of(CharSet.digits().negate());
+            case 'w':
+                return Part.of(CharSet.word());
+            case 'W':
+                return Part.of(CharSet.word().negate());
+            case 's':
+                return Part.of(CharSet.space());
+            case 'S':
+                return Part.of(CharSet.space().negate());
+            default:
+                if (c >= '1' && c <= '9') {
+                    // A back reference can match anything the group matched, or nothing
+                    Part reference = Part.of(CharSet.any());
+                    reference.nullable = true;
+                    return reference;
+                }
+                return Part.of(CharSet.of(escapedChar(c)));
+        }
+    }
+
+    private char escapedChar(char c) {
+        switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'v':
+                return '\u000B';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case '0':
+                return '\0';
+            case 'x':
+                return hex(2, c);
+            case 'u':
+                return hex(4, c);
+            default:
+                return c;
+        }
+    }
+
+    private char hex(int digits, char escape) {
+        if (position + digits > source.length()) {
+            return escape;
+        }
+        try {
+            char value = (char) Integer.parseInt(source.substring(position, position + digits), 16);
+            position += digits;
+            return value;
+        } catch (NumberFormatException e) {
+            return escape;
+        }
+    }
+
+    private CharSet characterClass() {
+        boolean negated = !atEnd() && peek() == '^';
+        if (negated) {
+            position++;
+        }
+        CharSet set = CharSet.none();
+        while (peekRequired() != ']') {
+            int from = classMember(set);
+            if (from >= 0 && !atEnd() && peek() == '-' && position + 1 < source.length()
+                    && source.charAt(position + 1) != ']') {
+                position++;
+                int to = classMember(set);
+                if (to < 0) {
+                    // A range from or to a class escape is a plain dash
+                    set.addAll(CharSet.of((char) from)).addAll(CharSet.of('-'));
+                } else if (from > to) {
+                    throw new IllegalArgumentException("Range out of order");
+                } else {
+                    set.addRange((char) from, (char) to);
+                }
+            } else if (from >= 0) {
+                set.addAll(CharSet.of((char) from));
+            }
+        }
+        position++;
+        return negated ? set.negate() : set;
+    }
+
+    /**
+     * Reads a member of a character class.
+     *
+     * @param set The set the class escapes are added to.
+     * @return The character read, or -1 for a class escape.
+     */
+    private int classMember(CharSet set) {
+        char c = next();
+        if (c != '\\') {
+            return c;
+        }
+        char escaped = next();
+        switch (escaped) {
+            case 'b':
+                return '\b';
+            case 'd':
+                set.addAll(CharSet.digits());
+                return -1;
+            case 'D':
+                set.addAll(CharSet.digits().negate());
+                return -1;
+            case 'w':
+                set.addAll(CharSet.word());
+                return -1;
+            case 'W':
+                set.addAll(CharSet.word().negate());
+                return -1;
+            case 's':
+                set.addAll(CharSet.space());
+                return -1;
+            case 'S':
+                set.addAll(CharSet.space().negate());
+                return -1;
+            default:
+                return escapedChar(escaped);
+        }
+    }
+
+    private Part group() {
+        boolean lookahead = false;
+        if (!atEnd() && peek() == '?') {
+            position++;
+            char kind = next();
+            if (kind == '=' || kind == '!') {
+                lookahead = true;
+            } else if (kind != ':') {
+                throw new IllegalArgumentException("Unknown group");
+            }
+        }
+        Part inner = disjunction();
+        if (next() != ')') {
+            throw new IllegalArgumentException("Unclosed group");
+        }
+        // Lookaheads don't consume anything, but what they contain is still matched
+        return lookahead ? Part.empty() : inner;
+    }
+
+    private Part quantifier(Part atom) {
+        if (atEnd()) {
+            return atom;
+        }
+        int min;
+        int max;
+        char c = peek();
+        if (c == '*') {
+            min = 0;
+            max = UNBOUNDED;
+            position++;
+        } else if (c == '+') {
+            min = 1;
+            max = UNBOUNDED;
+            position++;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+            position++;
+        } else if (c == '{' && braces() != null) {
+            int[] bounds = braces();
+            position = source.indexOf('}', position) + 1;
+            min = bounds[0];
+            max = bounds[1];
+        } else {
+            return atom;
+        }
+        if (!atEnd() && peek() == '?') {
+            // Lazy repetitions backtrack just as much when the match fails
+            position++;
+        }
+
+        if (max == UNBOUNDED && !atom.first.isEmpty() && (atom.ambiguous || atom.absorbs(atom.first))) {
+            unsafe = true;
+        }
+        return atom.repeat(min, max);
+    }
+
+    /**
+     * @return The bounds of the {n}, {n,} or {n,m} quantifier at the current position, or null if the brace is a
+     * literal.
+     */
+    private int[] braces() {
+        int end = source.indexOf('}', position);
+        if (end < 0) {
+            return null;
+        }
+        String bounds = source.substring(position + 1, end);
+        if (!bounds.matches("\\d+(,\\d*)?")) {
+            return null;
+        }
+        try {
+            int comma = bounds.indexOf(',');
+            if (comma < 0) {
+                int count = Integer.parseInt(bounds);
+                return new int[]{count, count};
+            }
+            int min = Integer.parseInt(bounds.substring(0, comma));
+            return new int[]{min, comma == bounds.length() - 1 ? UNBOUNDED : Integer.parseInt(bounds.substring(comma + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * What is known of a part of an expression.
+     */
+    private static final class Part {
+        /**
+         * The characters a match of the part can start with.
+         */
+        private final CharSet first;
+        /**
+         * Every character a match of the part can contain.
+         */
+        private final CharSet chars;
+        /**
+         * The characters of the unbounded repetitions of the part which could also match the rest of the part
+         * (because the rest can match nothing, or only characters of the repetition).
+         */
+        private final List<CharSet> absorbing;
+        private boolean nullable;
+        /**
+         * true if the part is a choice between alternatives which can start with the same character.
+         */
+        private boolean ambiguous;
+
+        private Part(CharSet first, CharSet chars, List<CharSet> absorbing, boolean nullable) {
+            this.first = first;
+            this.chars = chars;
+            this.absorbing = absorbing;
+            this.nullable = nullable;
+        }
+
+        private static Part empty() {
+            return new Part(CharSet.none(), CharSet.none(), new ArrayList<>(), true);
+        }
+
+        private static Part of(CharSet set) {
+            return new Part(set, set.copy(), new ArrayList<>(), false);
+        }
+
+        /**
+         * @param set A set of characters.
+         * @return true if a repetition of the part could match characters of the set, instead of the next part.
+         */
+        private boolean absorbs(CharSet set) {
+            for (CharSet repetition : absorbing) {
+                if (repetition.intersects(set)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Part then(Part next) {
+            CharSet first = nullable ? this.first.copy().addAll(next.first) : this.first;
+            List<CharSet> absorbing = new ArrayList<>(next.absorbing);
+            for (CharSet repetition : this.absorbing) {
+                if (next.nullable || repetition.containsAll(next.chars)) {
+                    absorbing.add(repetition);
+                }
+            }
+            return new Part(first, chars.copy().addAll(next.chars), absorbing, nullable && next.nullable);
+        }
+
+        private Part or(Part other) {
+            List<CharSet> absorbing = new ArrayList<>(this.absorbing);
+            absorbing.addAll(other.absorbing);
+            return new Part(first.copy().addAll(other.first), chars.copy().addAll(other.chars), absorbing,
+                    nullable || other.nullable);
+        }
+
+        private Part repeat(int min, int max) {
+            List<CharSet> absorbing = new ArrayList<>(this.absorbing);
+            if (max == UNBOUNDED) {
+                absorbing.add(chars);
+            }
+            return new Part(first, chars, absorbing, nullable || min == 0);
+        }
+    }
+
+    /**
+     * A set of characters - the ASCII ones exactly, any other one as a whole.
+     */
+    private static final class CharSet {
+        private static final int ASCII = 128;
+
+        private final BitSet ascii;
+        private boolean other;
+
+        private CharSet(BitSet ascii, boolean other) {
+            this.ascii = ascii;
+            this.other = other;
+        }
+
+        private static CharSet none() {
+            return new CharSet(new BitSet(ASCII), false);
+        }
+
+        private static CharSet any() {
+            return none().negate();
+        }
+
+        private static CharSet of(char c) {
+            return none().addRange(c, c);
+        }
+
+        private static CharSet digits() {
+            return none().addRange('0', '9');
+        }
+
+        private static CharSet word() {
+            return digits().addRange('a', 'z').addRange('A', 'Z').addAll(of('_'));
+        }
+
+        private static CharSet space() {
+            CharSet set = none().addRange('\t', '\r').addAll(of(' '));
+            // Non-breaking spaces, line separators and the like
+            set.other = true;
+            return set;
+        }
+
+        private CharSet copy() {
+            return new CharSet((BitSet) ascii.clone(), other);
+        }
+
+        private CharSet negate() {
+            BitSet negated = (BitSet) ascii.clone();
+            negated.flip(0, ASCII);
+            // Negating a set of non-ASCII characters still leaves other ones
+            return new CharSet(negated, true);
+        }
+
+        private CharSet addAll(CharSet set) {
+            ascii.or(set.ascii);
+            other |= set.other;
+            return this;
+        }
+
+        private CharSet addRange(char from, char to) {
+            if (from < ASCII) {
+                ascii.set(from, Math.min(to, ASCII - 1) + 1);
+            }
+            other |= to >= ASCII;
+            return this;
+        }
+
+        private boolean isEmpty() {
+            return ascii.isEmpty() && !other;
+        }
+
+        private boolean containsAll(CharSet set) {
+            BitSet missing = (BitSet) set.ascii.clone();
+            missing.andNot(ascii);
+            return missing.isEmpty() && (other || !set.other);
+        }
+
+        private boolean intersects(CharSet set) {
+            return ascii.intersects(set.ascii) || (other && set.other);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.rzats.jsonschema;
+
+/**
+ * The time a single document may spend matching regular expressions ({@link EcmaRegex}), along with the time it has
+ * spent so far.
+ * <p>
+ * A budget is started for the current thread when a document starts being validated, and closed when the validation
+ * ends - budgets started while another one is open (a part of the document validated on its own) replace it until
+ * they are closed. Regular expressions matched outside of a budget aren't limited or timed.
+ */
+public final class RegexBudget implements AutoCloseable {
+    private static final ThreadLocal<RegexBudget> CURRENT = new ThreadLocal<>();
+
+    private final RegexBudget previous;
+    private final long limitNanos;
+    private long spentNanos;
+    private boolean exhausted;
+
+    private RegexBudget(RegexBudget previous, long limitNanos) {
+        this.previous = previous;
+        this.limitNanos = limitNanos;
+    }
+
+    /**
+     * Starts a budget for the current thread.
+     *
+     * @param limitNanos The time the document may spend matching regular expressions, in nanoseconds, or 0 for no
+     *                   limit (the time is still recorded).
+     * @return The budget, to be closed once the document is validated.
+     */
+    public static RegexBudget start(long limitNanos) {
+        RegexBudget budget = new RegexBudget(CURRENT.get(), limitNanos);
+        CURRENT.set(budget);
+        return budget;
+    }
+
+    /**
+     * @return The budget of the document validated by the current thread, or null if there is none.
+     */
+    static RegexBudget current() {
+        return CURRENT.get();
+    }
+
+    boolean isLimited() {
+        return limitNanos > 0;
+    }
+
+    long remainingNanos() {
+        return limitNanos - spentNanos;
+    }
+
+    void spend(long nanos) {
+        spentNanos += nanos;
+    }
+
+    /**
+     * @throws ExhaustedException if the budget is limited and spent.
+     */
+    void check() {
+        if (isLimited() && spentNanos >= limitNanos) {
+            throw exhausted();
+        }
+    }
+
+    ExhaustedException exhausted() {
+        exhausted = true;
+        return ExhaustedException.INSTANCE;
+    }
+
+    /**
+     * @return The time spent matching regular expressions so far, in nanoseconds.
+     */
+    public long getSpentNanos() {
+        return spentNanos;
+    }
+
+    /**
+     * @return true if a match was aborted because the budget was spent.
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    @Override
+    public void close() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Receives the time spent matching regular expressions by each document validated against a schema.
+     */
+    public interface Recorder {
+        /**
+         * @param budget The closed budget of a document which matched at least one regular expression.
+         */
+        void record(RegexBudget budget);
+    }
+
+    /**
+     * Thrown out of the validation of a document which has spent its budget.
+     */
+    public static final class ExhaustedException extends RuntimeException {
+        private static final ExhaustedException INSTANCE = new ExhaustedException();
+
+        private ExhaustedException() {
+            super("regular expressions took longer than the time limit of the document", null, false, false);
+        }
+    }
+}
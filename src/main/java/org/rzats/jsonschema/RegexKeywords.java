@@ -0,0 +1,186 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jackson.JacksonUtils;
+import com.github.fge.jackson.NodeType;
+import com.github.fge.jsonschema.cfg.ValidationConfiguration;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.keyword.syntax.dictionaries.DraftV4SyntaxCheckerDictionary;
+import com.github.fge.jsonschema.core.processing.Processor;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.keyword.digest.common.AdditionalPropertiesDigester;
+import com.github.fge.jsonschema.keyword.validator.AbstractKeywordValidator;
+import com.github.fge.jsonschema.library.DraftV4Library;
+import com.github.fge.jsonschema.library.Keyword;
+import com.github.fge.jsonschema.library.Library;
+import com.github.fge.jsonschema.processors.data.FullData;
+import com.github.fge.msgsimple.bundle.MessageBundle;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The draft v4 keywords of the validation processor, with the {@code pattern} and {@code additionalProperties}
+ * validators replaced by ones which precompile their regular expressions into {@link EcmaRegex}es - matched within
+ * the {@link RegexBudget} of the document - instead of compiling them with the Rhino engine for every string.
+ * Reports are the same as with the original validators.
+ * <p>
+ * The library is made the default library, which validates the schemas without a {@code $schema}; the processor
+ * keeps the original library for the draft v4 URI, so {@link #withDefaultLibrary(JsonNode)} removes it from schemas
+ * before they are loaded. Draft v3 schemas, and the selection of the {@code patternProperties} which apply to a
+ * member (which the processor does by itself), still use the Rhino engine.
+ */
+public final class RegexKeywords {
+    private static final Set<String> DRAFT_V4_URIS = ImmutableSet.of(
+            "http://json-schema.org/draft-04/schema#", "http://json-schema.org/draft-04/schema");
+    private static final String LIBRARY_URI = "urn:json-schema:draft-04:precompiled-regex";
+
+    private RegexKeywords() {
+    }
+
+    /**
+     * @return The validation configuration using the library by default.
+     */
+    public static ValidationConfiguration validationConfiguration() {
+        Library library = DraftV4Library.get().thaw()
+                .addKeyword(Keyword.newBuilder("pattern")
+                        .withSyntaxChecker(DraftV4SyntaxCheckerDictionary.get().entries().get("pattern"))
+                        .withSimpleDigester(NodeType.STRING)
+                        .withValidatorClass(PatternValidator.class)
+                        .freeze())
+                .addKeyword(Keyword.newBuilder("additionalProperties")
+                        .withSyntaxChecker(DraftV4SyntaxCheckerDictionary.get().entries().get("additionalProperties"))
+                        .withDigester(AdditionalPropertiesDigester.getInstance())
+                        .withValidatorClass(AdditionalPropertiesValidator.class)
+                        .freeze())
+                .freeze();
+        return ValidationConfiguration.newBuilder()
+                .setDefaultLibrary(LIBRARY_URI, library)
+                .freeze();
+    }
+
+    /**
+     * Removes the draft v4 {@code $schema} of a schema, so it is validated with the default library.
+     *
+     * @param schema A JSON schema.
+     * @return The schema, or a copy of it without its {@code $schema}.
+     */
+    public static JsonNode withDefaultLibrary(JsonNode schema) {
+        if (!schema.isObject() || !DRAFT_V4_URIS.contains(schema.path("$schema").textValue())) {
+            return schema;
+        }
+        ObjectNode copy = ((ObjectNode) schema).deepCopy();
+        copy.remove("$schema");
+        return copy;
+    }
+
+    /**
+     * Validates the {@code pattern} keyword.
+     */
+    public static final class PatternValidator extends AbstractKeywordValidator {
+        private final EcmaRegex regex;
+
+        /**
+         * The class constructor.
+         *
+         * @param digest The digested schema - an object holding the pattern.
+         */
+        public PatternValidator(JsonNode digest) {
+            super("pattern");
+            this.regex = new EcmaRegex(digest.get(keyword).textValue());
+        }
+
+        @Override
+        public void validate(Processor<FullData, FullData> processor, ProcessingReport report, MessageBundle bundle,
+                             FullData data) throws ProcessingException {
+            String value = data.getInstance().getNode().textValue();
+            if (!regex.find(value)) {
+                report.error(newMsg(data, bundle, "err.common.pattern.noMatch")
+                        .putArgument("regex", regex.getSource())
+                        .putArgument("string", value));
+            }
+        }
+
+        @Override
+        public String toString() {
+            return keyword + ": " + regex;
+        }
+    }
+
+    /**
+     * Validates the {@code additionalProperties} keyword, when it is false.
+     */
+    public static final class AdditionalPropertiesValidator extends AbstractKeywordValidator {
+        private final boolean additionalAllowed;
+        private final Set<String> properties;
+        private final List<EcmaRegex> patternProperties = new ArrayList<>();
+
+        /**
+         * The class constructor.
+         *
+         * @param digest The digested schema - whether additional properties are allowed, and the names and patterns
+         *               of the other properties.
+         */
+        public AdditionalPropertiesValidator(JsonNode digest) {
+            super("additionalProperties");
+            this.additionalAllowed = digest.get(keyword).booleanValue();
+            ImmutableSet.Builder<String> properties = ImmutableSet.builder();
+            for (JsonNode property : digest.path("properties")) {
+                properties.add(property.textValue());
+            }
+            this.properties = properties.build();
+            for (JsonNode pattern : digest.path("patternProperties")) {
+                patternProperties.add(new EcmaRegex(pattern.textValue()));
+            }
+        }
+
+        @Override
+        public void validate(Processor<FullData, FullData> processor, ProcessingReport report, MessageBundle bundle,
+                             FullData data) throws ProcessingException {
+            if (additionalAllowed) {
+                return;
+            }
+
+            // Sorted, like the original validator reports them
+            Set<String> unwanted = new TreeSet<>();
+            Iterator<String> names = data.getInstance().getNode().fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                if (!properties.contains(name) && !matchesPattern(name)) {
+                    unwanted.add(name);
+                }
+            }
+            if (unwanted.isEmpty()) {
+                return;
+            }
+
+            ArrayNode unwantedNode = JacksonUtils.nodeFactory().arrayNode();
+            for (String name : unwanted) {
+                unwantedNode.add(name);
+            }
+            report.error(newMsg(data, bundle, "err.common.additionalProperties.notAllowed")
+                    .putArgument("unwanted", unwantedNode));
+        }
+
+        private boolean matchesPattern(String name) {
+            for (EcmaRegex pattern : patternProperties) {
+                if (pattern.find(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return keyword + ": " + (additionalAllowed ? "allowed" : "none, unless in " + properties + " or matching "
+                    + patternProperties);
+        }
+    }
+}
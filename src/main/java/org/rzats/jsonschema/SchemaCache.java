@@ -0,0 +1,321 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.cfg.ValidationConfiguration;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.load.SchemaLoader;
+import com.github.fge.jsonschema.core.load.configuration.LoadingConfiguration;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.rzats.jsonschema.database.DatabaseProviderException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded, concurrent cache of {@link CompiledSchema} instances, backed by a {@link SchemaStore}.
+ * <p>
+ * All schemas are loaded by a single {@link SchemaLoader}, and each one is validated by the processor of its own
+ * {@link JsonSchemaFactory}: processors cache the validators they build for as long as they live, so a shared one would
+ * keep every evicted or overwritten schema reachable. Entries are keyed by the schema identifier
+ * and a per-identifier version which is bumped by {@link #invalidate(String)}, so a load that races with an upload
+ * can never be served once the upload has invalidated the schema.
+ * <p>
+ * Schemas can reference each other with {@code $ref} URIs of the form {@code schema:///ID#/json/pointer}, which the
+ * factory resolves straight from the {@link SchemaStore}. The processor of a schema builds the validators of the
+ * schemas it references along with its own. The references of a schema are found when it is compiled, and
+ * invalidating a schema invalidates every schema referencing it, directly or not. Dependencies are never forgotten, so overwriting a
+ * schema which no longer references another one may still invalidate it needlessly.
+ * <p>
+ * The factory matches the {@code pattern} and {@code additionalProperties} keywords with precompiled regular
+ * expressions (see {@link RegexKeywords}), within a time budget per document.
+ */
+@Service
+public class SchemaCache {
+    /**
+     * The URI scheme of references to stored schemas.
+     */
+    public static final String SCHEME = "schema";
+
+    private final SchemaLoader loader = new SchemaLoader(LoadingConfiguration.byDefault());
+    private final ConcurrentMap<String, Long> versions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<>();
+    private final SchemaStore schemaStore;
+    private final ValidatorMetrics metrics;
+    private final LoadingCache<CacheKey, Optional<CompiledSchema>> cache;
+    private final long specializationThreshold;
+    private final long regexTimeLimit;
+    private final LoadingConfiguration loadingConfiguration;
+    private final ValidationConfiguration validationConfiguration = RegexKeywords.validationConfiguration();
+
+    /**
+     * The class constructor.
+     *
+     * @param schemaStore             The store the schemas are loaded from.
+     * @param metrics                 The metrics the compilation latency is recorded in.
+     * @param maximumSize             The maximum number of schemas kept in the cache.
+     * @param specializationThreshold The number of documents a schema validates before it is compiled into a
+     *                                {@link SpecializedValidator}, or 0 to never compile schemas.
+     * @param regexTimeLimit          The time a document may spend matching the regular expressions of a schema, in
+     *                                milliseconds, or 0 for no limit.
+     */
+    @Autowired
+    public SchemaCache(SchemaStore schemaStore, ValidatorMetrics metrics,
+                       @Value("${schema.cache.maximum-size:1000}") long maximumSize,
+                       @Value("${schema.specialization.threshold:0}") long specializationThreshold,
+                       @Value("${schema.regex.time-limit:0}") long regexTimeLimit) {
+        this.schemaStore = schemaStore;
+        this.metrics = metrics;
+        this.specializationThreshold = specializationThreshold;
+        this.regexTimeLimit = regexTimeLimit;
+        this.loadingConfiguration = LoadingConfiguration.newBuilder()
+                .addScheme(SCHEME, this::download)
+                .freeze();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<CacheKey, Optional<CompiledSchema>>() {
+                    @Override
+                    public Optional<CompiledSchema> load(CacheKey key) throws Exception {
+                        return Optional.fromNullable(compile(key.id));
+                    }
+                });
+    }
+
+    /**
+     * Returns the compiled schema with the given identifier, loading and compiling it if it isn't cached yet.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The compiled schema, or null if no schema with the given identifier exists.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the stored schema can't be decoded.
+     * @throws ProcessingException       if the stored schema could not be compiled.
+     */
+    public CompiledSchema get(String id) throws DatabaseProviderException, IOException, ProcessingException {
+        try {
+            return cache.get(new CacheKey(id, version(id))).orNull();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DatabaseProviderException) {
+                throw (DatabaseProviderException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ProcessingException) {
+                throw (ProcessingException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns the current version of a schema, which changes whenever the schema (or a schema it references) is
+     * invalidated. A version read before {@link #get(String)} is never newer than the schema returned by it.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The version of the schema.
+     */
+    public long version(String id) {
+        return versions.getOrDefault(id, 0L);
+    }
+
+    /**
+     * Discards the cached schema with the given identifier, along with every schema referencing it.
+     * Should be called after the schema is written.
+     *
+     * @param id The unique identifier of the JSON schema.
+     */
+    public void invalidate(String id) {
+        Set<String> referencing = dependents.get(id);
+        if (referencing != null) {
+            for (String dependent : referencing) {
+                invalidateVersion(dependent);
+            }
+        }
+        invalidateVersion(id);
+    }
+
+    private void invalidateVersion(String id) {
+        long previous = versions.merge(id, 1L, Long::sum) - 1;
+        cache.invalidate(new CacheKey(id, previous));
+    }
+
+    /**
+     * @return The hit/miss/eviction statistics of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return The number of schemas currently in the cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Creates a factory resolving references to stored schemas from the {@link SchemaStore}, for a single schema.
+     *
+     * @return The factory.
+     */
+    private JsonSchemaFactory createFactory() {
+        return JsonSchemaFactory.newBuilder()
+                .setLoadingConfiguration(loadingConfiguration)
+                .setValidationConfiguration(validationConfiguration)
+                .freeze();
+    }
+
+    /**
+     * Fetches a referenced schema for the factory.
+     *
+     * @param uri The {@code schema:///ID} URI of the schema.
+     * @return The schema as JSON text.
+     * @throws IOException if the schema doesn't exist or can't be read.
+     */
+    private InputStream download(URI uri) throws IOException {
+        String id = idFromUri(uri);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try {
+            if (id == null || !schemaStore.writeJson(id, json, false)) {
+                throw new IOException(String.format("Schema with id %s doesn't exist", id));
+            }
+        } catch (DatabaseProviderException e) {
+            throw new IOException(e);
+        }
+        return new ByteArrayInputStream(json.toByteArray());
+    }
+
+    /**
+     * @param uri A URI.
+     * @return The identifier of the stored schema the URI refers to, or null if it isn't a {@code schema:///ID} URI.
+     */
+    private static String idFromUri(URI uri) {
+        if (!SCHEME.equals(uri.getScheme()) || uri.getRawAuthority() != null || uri.getPath() == null
+                || uri.getPath().length() < 2) {
+            return null;
+        }
+        return uri.getPath().substring(1);
+    }
+
+    /**
+     * @param id The unique identifier of a stored schema.
+     * @return The {@code schema:///ID} URI of the schema.
+     */
+    private static URI uriFromId(String id) {
+        try {
+            return new URI(SCHEME, null, "/" + id, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Collects the identifiers of the stored schemas referenced by a schema.
+     *
+     * @param base The URI references are resolved against, or null for a schema which was not loaded by URI.
+     * @param node The schema, or any part of it.
+     * @param ids  The set the identifiers are added to.
+     */
+    private static void collectReferences(URI base, JsonNode node, Set<String> ids) {
+        JsonNode ref = node.get("$ref");
+        if (ref != null && ref.isTextual()) {
+            try {
+                URI uri = base == null ? new URI(ref.textValue()) : base.resolve(new URI(ref.textValue()));
+                String id = idFromUri(uri);
+                if (id != null) {
+                    ids.add(id);
+                }
+            } catch (URISyntaxException e) {
+                // Left for the validator to report
+            }
+        }
+        for (JsonNode child : node) {
+            collectReferences(base, child, ids);
+        }
+    }
+
+    /**
+     * Records a schema as a dependent of every stored schema it references, directly or not.
+     *
+     * @param id         The unique identifier of the JSON schema.
+     * @param schemaNode The JSON schema.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if a referenced schema can't be decoded.
+     */
+    private void recordDependencies(String id, JsonNode schemaNode) throws DatabaseProviderException, IOException {
+        Set<String> pending = new HashSet<>();
+        collectReferences(null, schemaNode, pending);
+
+        Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            String referenced = pending.iterator().next();
+            pending.remove(referenced);
+            if (!visited.add(referenced)) {
+                continue;
+            }
+
+            dependents.computeIfAbsent(referenced, key -> ConcurrentHashMap.newKeySet()).add(id);
+            JsonNode referencedNode = schemaStore.get(referenced);
+            if (referencedNode != null) {
+                collectReferences(uriFromId(referenced), referencedNode, pending);
+            }
+        }
+    }
+
+    private CompiledSchema compile(String id) throws DatabaseProviderException, IOException, ProcessingException {
+        JsonNode schemaNode = schemaStore.get(id);
+        if (schemaNode == null) {
+            return null;
+        }
+
+        try (ValidatorMetrics.Sample ignored = metrics.stage("schemaCache", "compile")) {
+            // Dependencies are recorded before the referenced schemas are loaded, so a concurrent upload of one of
+            // them is either seen by the new processor or invalidates this schema
+            recordDependencies(id, schemaNode);
+            return new CompiledSchema(createFactory().getProcessor(), loader.load(RegexKeywords.withDefaultLibrary(schemaNode)),
+                    specializationThreshold, regexTimeLimit, budget -> metrics.regex(id, budget));
+        }
+    }
+
+    private static final class CacheKey {
+        private final String id;
+        private final long version;
+
+        private CacheKey(String id, long version) {
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) other;
+            return version == that.version && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, version);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.rzats.jsonschema;
+
+import com.google.common.cache.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the {@link SchemaCache} statistics on the actuator /metrics endpoint.
+ */
+@Component
+public class SchemaCacheMetrics implements PublicMetrics {
+    private static final String PREFIX = "cache.schema.";
+
+    @Autowired
+    private SchemaCache schemaCache;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = schemaCache.stats();
+
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "size", schemaCache.size()));
+        metrics.add(new Metric<>(PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(PREFIX + "eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(PREFIX + "hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>(PREFIX + "load.nanos.average", stats.averageLoadPenalty()));
+        return metrics;
+    }
+}
@@ -0,0 +1,29 @@
+package org.rzats.jsonschema;
+
+/**
+ * The POJO class describing one entry of the schema change feed.
+ * Automatically converted to JSON as part of a {@link JsonValidatorResponse}.
+ */
+public class SchemaChange {
+    private long sequence;
+    private String id;
+
+    /**
+     * The class constructor.
+     *
+     * @param sequence The sequence number of the change
+     * @param id       The unique identifier of the JSON schema which was written
+     */
+    public SchemaChange(long sequence, String id) {
+        this.sequence = sequence;
+        this.id = id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
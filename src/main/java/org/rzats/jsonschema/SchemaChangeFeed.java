@@ -0,0 +1,135 @@
+package org.rzats.jsonschema;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.rzats.jsonschema.database.DatabaseProvider;
+import org.rzats.jsonschema.database.DatabaseProviderException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the change log of the {@link DatabaseProvider} as a feed of schema changes, with long polling.
+ * <p>
+ * Readers pass the sequence number of the last change they have seen. If newer changes exist, they are returned
+ * straight away; otherwise the reader waits until the {@link SchemaStore} reports a write, or until its timeout
+ * expires. No thread is held while waiting.
+ */
+@Service
+public class SchemaChangeFeed {
+    private final Set<CompletableFuture<Void>> waiters = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("schema-change-feed").setDaemon(true).build());
+    private final DatabaseProvider databaseProvider;
+
+    /**
+     * The class constructor.
+     *
+     * @param databaseProvider The database whose change log is served.
+     */
+    @Autowired
+    public SchemaChangeFeed(DatabaseProvider databaseProvider) {
+        this.databaseProvider = databaseProvider;
+        // Timeouts are cancelled as soon as a change arrives, don't keep them queued until they expire
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Wakes up the readers waiting for changes. Called after every write of a schema.
+     */
+    public void changed() {
+        for (CompletableFuture<Void> waiter : waiters) {
+            waiters.remove(waiter);
+            waiter.complete(null);
+        }
+    }
+
+    /**
+     * @return The sequence number of the latest change, or 0 if nothing has been written yet.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    public long latestSequence() throws DatabaseProviderException {
+        return databaseProvider.latestSequence();
+    }
+
+    /**
+     * Lists the changes made after a given sequence number, waiting for one if there are none yet.
+     *
+     * @param since         The sequence number of the last change already known to the caller, or 0 to list every
+     *                      change still in the log.
+     * @param limit         The maximum number of changes returned.
+     * @param timeoutMillis How long to wait for a change, in milliseconds.
+     * @return A future completed with the changes in sequence order (empty if none were made before the timeout), or
+     * with null if the changes after the given sequence number are no longer available. The future fails with a
+     * {@link CompletionException} wrapping a {@link DatabaseProviderException} if a database error occurs.
+     */
+    public CompletableFuture<List<SchemaChange>> changes(long since, int limit, long timeoutMillis) {
+        try {
+            if (databaseProvider.latestSequence() != since || timeoutMillis <= 0) {
+                return CompletableFuture.completedFuture(read(since, limit));
+            }
+        } catch (DatabaseProviderException e) {
+            CompletableFuture<List<SchemaChange>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new CompletionException(e));
+            return failed;
+        }
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // A write may have happened between the check above and the registration
+        try {
+            if (databaseProvider.latestSequence() != since) {
+                waiters.remove(waiter);
+                waiter.complete(null);
+            }
+        } catch (DatabaseProviderException e) {
+            waiters.remove(waiter);
+            waiter.completeExceptionally(e);
+        }
+        ScheduledFuture<?> timeout = executor.schedule(() -> {
+            waiters.remove(waiter);
+            waiter.complete(null);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        waiter.whenComplete((result, e) -> timeout.cancel(false));
+
+        return waiter.thenApplyAsync(ignored -> {
+            try {
+                return read(since, limit);
+            } catch (DatabaseProviderException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Reads the changes made after a given sequence number from the change log.
+     *
+     * @param since The sequence number of the last change already known to the caller.
+     * @param limit The maximum number of changes returned.
+     * @return The changes in sequence order, or null if they are no longer available.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    private List<SchemaChange> read(long since, int limit) throws DatabaseProviderException {
+        List<SchemaChange> changes = new ArrayList<>();
+        boolean available = databaseProvider.scanChanges(since, (sequence, key) -> {
+            changes.add(new SchemaChange(sequence, new String(key, StandardCharsets.UTF_8)));
+            return changes.size() < limit;
+        });
+        return available ? changes : null;
+    }
+}
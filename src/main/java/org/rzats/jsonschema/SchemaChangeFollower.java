@@ -0,0 +1,272 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.rzats.jsonschema.database.DatabaseProviderException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the stored schemas of this node in step with other nodes, by tailing their change feeds (GET /changes).
+ * <p>
+ * One background thread per peer in schema.follow.peers long-polls the peer's feed, downloads the schemas it reports
+ * and stores the ones which differ from the local copy, invalidating the {@link SchemaCache} (and so the cached
+ * validation results) as it goes. Nodes can follow each other: a schema received from a peer is only stored if its
+ * content differs, so it isn't bounced back and forth. The first poll, and any poll whose changes the peer no longer
+ * has, copies every schema of the peer (GET /schema) instead. Schema versions and ETags are local to each node.
+ * <p>
+ * This health indicator lists the sequence number, latest error and synchronization state of every peer. It is UP
+ * once every peer has been copied, and UNKNOWN until then; it is never DOWN, since a lagging follower can still serve
+ * requests.
+ */
+@Component
+public class SchemaChangeFollower implements ApplicationListener<ApplicationReadyEvent>, HealthIndicator {
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private final List<Peer> peers = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final SchemaStore schemaStore;
+    private final SchemaCache schemaCache;
+    private final RestTemplate restTemplate;
+    private final int pollTimeout;
+    private final long retryDelay;
+    private volatile boolean running = true;
+
+    /**
+     * The class constructor.
+     *
+     * @param schemaStore The store the schemas are written to.
+     * @param schemaCache The cache invalidated for every schema written.
+     * @param peers       The base URLs of the followed nodes, separated by commas (none by default).
+     * @param pollTimeout How long a single poll of a change feed waits for a change, in seconds.
+     * @param retryDelay  How long to wait after a failed poll before retrying, in milliseconds.
+     */
+    @Autowired
+    public SchemaChangeFollower(SchemaStore schemaStore, SchemaCache schemaCache,
+                                @Value("${schema.follow.peers:}") String[] peers,
+                                @Value("${schema.follow.poll-timeout:25}") int pollTimeout,
+                                @Value("${schema.follow.retry-delay:1000}") long retryDelay) {
+        this.schemaStore = schemaStore;
+        this.schemaCache = schemaCache;
+        for (String peer : peers) {
+            if (!peer.trim().isEmpty()) {
+                this.peers.add(new Peer(peer.trim().replaceAll("/+$", "")));
+            }
+        }
+        this.pollTimeout = pollTimeout;
+        this.retryDelay = retryDelay;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+        requestFactory.setReadTimeout(pollTimeout * 1000 + CONNECT_TIMEOUT);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        for (Peer peer : peers) {
+            Thread thread = new Thread(() -> follow(peer), "schema-follower-" + threads.size());
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Tails the change feed of a peer until the application is closed.
+     *
+     * @param peer The followed peer.
+     */
+    private void follow(Peer peer) {
+        while (running) {
+            try {
+                poll(peer);
+                peer.error = null;
+            } catch (DatabaseProviderException | IOException | RestClientException e) {
+                peer.error = e.getMessage();
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Polls the change feed of a peer once, and applies the changes.
+     *
+     * @param peer The followed peer.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the peer returns an error or invalid JSON.
+     */
+    private void poll(Peer peer) throws DatabaseProviderException, IOException {
+        if (!peer.copied) {
+            // Nothing has been seen yet, so copy everything up to the latest change first
+            resynchronize(peer, latestSequence(peer));
+            return;
+        }
+
+        JsonNode response = restTemplate.getForObject(peer.url + "/changes?since={since}&timeout={timeout}",
+                JsonNode.class, peer.sequence, pollTimeout);
+        if (response == null) {
+            throw new IOException("Empty response from the change feed");
+        }
+        JsonNode sequence = response.get("sequence");
+        if (!"success".equals(response.path("status").asText())) {
+            if (sequence == null) {
+                throw new IOException(response.path("message").asText());
+            }
+            // The changes have been discarded from the peer's log (or the peer's database is a different one)
+            resynchronize(peer, sequence.asLong());
+            return;
+        }
+
+        // A schema written several times only needs to be downloaded once
+        Set<String> ids = new LinkedHashSet<>();
+        for (JsonNode change : response.path("changes")) {
+            ids.add(change.path("id").asText());
+        }
+        for (String id : ids) {
+            ResponseEntity<byte[]> schema = restTemplate.getForEntity(peer.url + "/schema/{id}", byte[].class, id);
+            // Only a schema carries an ETag, errors don't
+            if (schema.getHeaders().getETag() == null || schema.getBody() == null) {
+                throw new IOException(String.format("Schema with id %s can't be downloaded", id));
+            }
+            apply(id, SchemaStore.parseJson(schema.getBody(), 0, schema.getBody().length));
+        }
+        peer.sequence = sequence.asLong();
+    }
+
+    /**
+     * Reads the sequence number of the latest change of a peer, without waiting.
+     *
+     * @param peer The followed peer.
+     * @return The sequence number.
+     * @throws IOException if the peer returns an error.
+     */
+    private long latestSequence(Peer peer) throws IOException {
+        // Polling since a sequence number the peer can't have yet is answered with the latest one straight away
+        JsonNode response = restTemplate.getForObject(peer.url + "/changes?since={since}&timeout=0",
+                JsonNode.class, Long.MAX_VALUE);
+        if (response == null || !response.has("sequence")) {
+            throw new IOException(response == null ? "Empty response from the change feed" : response.path("message").asText());
+        }
+        return response.get("sequence").asLong();
+    }
+
+    /**
+     * Copies every schema of a peer which differs from the local one, then resumes polling after a given sequence
+     * number. Changes made during the copy are polled again, so none are missed.
+     *
+     * @param peer     The followed peer.
+     * @param sequence The latest sequence number of the peer, read before the copy.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the peer returns an error or invalid JSON.
+     */
+    private void resynchronize(Peer peer, long sequence) throws DatabaseProviderException, IOException {
+        Map<String, JsonNode> schemas = new LinkedHashMap<>();
+        restTemplate.execute(peer.url + "/schema", HttpMethod.GET, null, response -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    JsonNode node = SchemaStore.parseJson(bytes, 0, bytes.length);
+                    if (node.has("action")) {
+                        // The export failed part way through
+                        throw new IOException(node.path("message").asText());
+                    }
+                    schemas.put(node.path("id").asText(), node.get("schema"));
+                }
+            }
+            return null;
+        });
+
+        for (Map.Entry<String, JsonNode> schema : schemas.entrySet()) {
+            apply(schema.getKey(), schema.getValue());
+        }
+        peer.sequence = sequence;
+        peer.copied = true;
+    }
+
+    /**
+     * Stores a schema received from a peer, unless the local copy is the same.
+     *
+     * @param id     The unique identifier of the JSON schema.
+     * @param schema The JSON schema.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the schema can't be encoded or decoded.
+     */
+    private void apply(String id, JsonNode schema) throws DatabaseProviderException, IOException {
+        if (schema == null || schema.equals(schemaStore.get(id))) {
+            return;
+        }
+        schemaStore.put(id, schema);
+        schemaCache.invalidate(id);
+    }
+
+    @Override
+    public Health health() {
+        boolean copied = true;
+        Map<String, Object> peerDetails = new LinkedHashMap<>();
+        for (Peer peer : peers) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("synchronized", peer.copied);
+            details.put("sequence", peer.sequence);
+            if (peer.error != null) {
+                details.put("error", peer.error);
+            }
+            peerDetails.put(peer.url, details);
+            copied &= peer.copied;
+        }
+        return new Health.Builder(copied ? Status.UP : Status.UNKNOWN, peerDetails).build();
+    }
+
+    /**
+     * A followed node, along with the progress made through its change feed.
+     */
+    private static final class Peer {
+        private final String url;
+        private volatile long sequence;
+        private volatile String error;
+        private volatile boolean copied;
+
+        private Peer(String url) {
+            this.url = url;
+        }
+    }
+}
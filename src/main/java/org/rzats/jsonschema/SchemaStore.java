@@ -0,0 +1,548 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import org.rzats.jsonschema.database.DatabaseProvider;
+import org.rzats.jsonschema.database.DatabaseProviderException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Stores JSON schemas by their unique identifier in the {@link DatabaseProvider}.
+ * <p>
+ * Identifiers are always encoded as UTF-8 keys. Schemas are stored in the binary Smile format behind a header (a zero
+ * marker byte, which can't start a JSON text, followed by the format version), so they can be decoded without
+ * re-tokenizing text. Since format version 2, the header also holds the version of the schema, which is incremented
+ * by every write, and a 128-bit murmur3 hash of the Smile payload; together they make up the schema's ETag.
+ * Entries written before the header was introduced are pretty-printed JSON text; they are still readable, and are
+ * rewritten in the binary format the first time they are read. Entries without a version are at version 0.
+ * <p>
+ * All writes of a schema hold its striped write lock, so conditional writes are atomic as long as the database is
+ * only written through this store. Every write is reported to the {@link SchemaChangeFeed}.
+ */
+@Service
+public class SchemaStore {
+    private static final byte FORMAT_MARKER = 0;
+    private static final byte FORMAT_SMILE_V1 = 1;
+    private static final byte FORMAT_SMILE_V2 = 2;
+    private static final int HEADER_LENGTH_V1 = 2;
+    private static final int HASH_LENGTH = 16;
+    private static final int HEADER_LENGTH_V2 = HEADER_LENGTH_V1 + Long.BYTES + HASH_LENGTH;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final ObjectMapper JSON_MAPPER = createMapper(new JsonFactory());
+    private static final ObjectMapper SMILE_MAPPER = createMapper(new SmileFactory());
+
+    private final Striped<Lock> writeLocks = Striped.lazyWeakLock(64);
+
+    @Autowired
+    private DatabaseProvider databaseProvider;
+
+    @Autowired
+    private ValidatorMetrics metrics;
+
+    @Autowired
+    private SchemaChangeFeed changeFeed;
+
+    /**
+     * Creates a mapper reading numbers the same way as the JSON schema validator - decimals are kept exact.
+     *
+     * @param factory The factory of the underlying data format.
+     * @return The mapper.
+     */
+    private static ObjectMapper createMapper(JsonFactory factory) {
+        return new ObjectMapper(factory)
+                .setNodeFactory(JsonNodeFactory.withExactBigDecimals(false))
+                .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    }
+
+    /**
+     * Converts a schema identifier to its database key.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The UTF-8 encoded key.
+     */
+    private static byte[] key(String id) {
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param value A stored value.
+     * @return true if the value is in the binary format, false if it is legacy JSON text.
+     */
+    private static boolean isBinary(byte[] value) {
+        return value.length >= HEADER_LENGTH_V1 && value[0] == FORMAT_MARKER;
+    }
+
+    /**
+     * @param value A stored value.
+     * @return true if the value is in the current binary format, with a version and a hash.
+     */
+    private static boolean isVersioned(byte[] value) {
+        return isBinary(value) && value[1] == FORMAT_SMILE_V2 && value.length >= HEADER_LENGTH_V2;
+    }
+
+    /**
+     * Encodes a schema as a Smile payload, without the header.
+     *
+     * @param schema The JSON schema.
+     * @return The payload.
+     * @throws IOException if the schema can't be encoded.
+     */
+    private static byte[] encodePayload(JsonNode schema) throws IOException {
+        return SMILE_MAPPER.writeValueAsBytes(schema);
+    }
+
+    /**
+     * Prepends the header of the current binary storage format to a Smile payload.
+     *
+     * @param payload The Smile payload.
+     * @param version The version of the schema.
+     * @return The stored value.
+     */
+    private static byte[] withHeader(byte[] payload, long version) {
+        return ByteBuffer.allocate(HEADER_LENGTH_V2 + payload.length)
+                .put(FORMAT_MARKER)
+                .put(FORMAT_SMILE_V2)
+                .putLong(version)
+                .put(HASH_FUNCTION.hashBytes(payload).asBytes())
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * Creates a parser over a stored value in either the binary or the legacy text format.
+     *
+     * @param value The stored value.
+     * @return The parser.
+     * @throws IOException if the value is in an unknown format.
+     */
+    private static JsonParser createParser(byte[] value) throws IOException {
+        if (!isBinary(value)) {
+            return JSON_MAPPER.getFactory().createParser(value);
+        }
+        if (value[1] == FORMAT_SMILE_V1) {
+            return SMILE_MAPPER.getFactory().createParser(value, HEADER_LENGTH_V1, value.length - HEADER_LENGTH_V1);
+        }
+        if (isVersioned(value)) {
+            return SMILE_MAPPER.getFactory().createParser(value, HEADER_LENGTH_V2, value.length - HEADER_LENGTH_V2);
+        }
+        throw new IOException(String.format("Unknown schema storage format %d", value[1]));
+    }
+
+    /**
+     * Decodes a stored value in either the binary or the legacy text format.
+     *
+     * @param value The stored value.
+     * @return The JSON schema.
+     * @throws IOException if the value can't be decoded.
+     */
+    private static JsonNode decode(byte[] value) throws IOException {
+        try (JsonParser parser = createParser(value)) {
+            return SMILE_MAPPER.readTree(parser);
+        }
+    }
+
+    /**
+     * Parses a JSON text, keeping decimals exact.
+     *
+     * @param json The JSON text.
+     * @return The parsed JSON node.
+     * @throws IOException if the text is not valid JSON.
+     */
+    public static JsonNode parseJson(InputStream json) throws IOException {
+        return JSON_MAPPER.readTree(json);
+    }
+
+    /**
+     * Parses a part of a buffer as JSON text, keeping decimals exact.
+     *
+     * @param json   The buffer.
+     * @param offset The offset of the JSON text in the buffer.
+     * @param length The length of the JSON text.
+     * @return The parsed JSON node.
+     * @throws IOException if the text is not valid JSON.
+     */
+    public static JsonNode parseJson(byte[] json, int offset, int length) throws IOException {
+        try (JsonParser parser = JSON_MAPPER.getFactory().createParser(json, offset, length)) {
+            return JSON_MAPPER.readTree(parser);
+        }
+    }
+
+    /**
+     * Calls {@link DatabaseProvider#get}, recording its latency.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The stored value, or null if it doesn't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    private byte[] databaseGet(String id) throws DatabaseProviderException {
+        try (ValidatorMetrics.Sample ignored = metrics.database("get")) {
+            return databaseProvider.get(key(id));
+        }
+    }
+
+    /**
+     * Calls {@link DatabaseProvider#put}, recording its latency, and reports the change.
+     *
+     * @param id    The unique identifier of the JSON schema.
+     * @param value The value to store.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    private void databasePut(String id, byte[] value) throws DatabaseProviderException {
+        try (ValidatorMetrics.Sample ignored = metrics.database("put")) {
+            databaseProvider.put(key(id), value);
+        }
+        changeFeed.changed();
+    }
+
+    /**
+     * Fetches the stored value for a schema, rewriting it in the binary format if it's legacy JSON text.
+     * The rewrite isn't recorded as a change, since the schema itself stays the same.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The stored value, or null if it doesn't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if a legacy value isn't valid JSON.
+     */
+    private byte[] fetch(String id) throws DatabaseProviderException, IOException {
+        byte[] value = databaseGet(id);
+        if (value == null || isBinary(value)) {
+            return value;
+        }
+
+        // Migrate the legacy entry, unless it has been overwritten in the meantime
+        Lock lock = writeLocks.get(id);
+        lock.lock();
+        try {
+            value = databaseGet(id);
+            if (value != null && !isBinary(value)) {
+                value = withHeader(encodePayload(decode(value)), 0);
+                try (ValidatorMetrics.Sample ignored = metrics.database("put")) {
+                    databaseProvider.rewrite(key(id), value);
+                }
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a schema with the given identifier exists.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return true if the schema exists.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    public boolean exists(String id) throws DatabaseProviderException {
+        return databaseGet(id) != null;
+    }
+
+    /**
+     * Returns the stored schema with the given identifier, without decoding it.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The stored schema, or null if it doesn't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if a legacy value isn't valid JSON.
+     */
+    public StoredSchema read(String id) throws DatabaseProviderException, IOException {
+        byte[] value = fetch(id);
+        return value == null ? null : new StoredSchema(value);
+    }
+
+    /**
+     * Returns the stored schema with the given identifier, decoded straight from its binary form.
+     *
+     * @param id The unique identifier of the JSON schema.
+     * @return The JSON schema, or null if it doesn't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the stored schema can't be decoded.
+     */
+    public JsonNode get(String id) throws DatabaseProviderException, IOException {
+        byte[] value = fetch(id);
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * Lists the identifiers of the stored schemas, in key order if the database keeps its keys ordered.
+     *
+     * @param limit The maximum number of identifiers, or 0 to list all of them.
+     * @return The schema identifiers.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    public List<String> ids(int limit) throws DatabaseProviderException {
+        List<String> ids = new ArrayList<>();
+        try (ValidatorMetrics.Sample ignored = metrics.database("scan")) {
+            databaseProvider.scan((key, value) -> {
+                ids.add(new String(key, StandardCharsets.UTF_8));
+                return limit <= 0 || ids.size() < limit;
+            });
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the stored schema with the given identifier as JSON text, transcoding it token by token.
+     *
+     * @param id     The unique identifier of the JSON schema.
+     * @param out    The stream the JSON text is written to.
+     * @param pretty If true, the JSON text is pretty-printed.
+     * @return true if the schema was written, false if it doesn't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the stored schema can't be decoded or written.
+     */
+    public boolean writeJson(String id, OutputStream out, boolean pretty) throws DatabaseProviderException, IOException {
+        StoredSchema schema = read(id);
+        if (schema == null) {
+            return false;
+        }
+        schema.writeJson(out, pretty);
+        return true;
+    }
+
+    /**
+     * Writes every stored schema as newline-delimited JSON, one {@code {"id": ..., "schema": ...}} object per line.
+     *
+     * @param out The stream the JSON text is written to.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if a stored schema can't be decoded or written.
+     */
+    public void writeAllJson(OutputStream out) throws DatabaseProviderException, IOException {
+        try (JsonGenerator generator = JSON_MAPPER.getFactory().createGenerator(out);
+             ValidatorMetrics.Sample ignored = metrics.database("scan")) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            databaseProvider.scan((key, value) -> {
+                try (JsonParser parser = createParser(value)) {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", new String(key, StandardCharsets.UTF_8));
+                    generator.writeFieldName("schema");
+                    parser.nextToken();
+                    generator.copyCurrentStructure(parser);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stores a schema with the given identifier, overwriting any existing schema.
+     *
+     * @param id     The unique identifier of the JSON schema.
+     * @param schema The JSON schema.
+     * @return The stored schema.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the schema can't be encoded.
+     */
+    public StoredSchema put(String id, JsonNode schema) throws DatabaseProviderException, IOException {
+        return put(id, schema, true, null);
+    }
+
+    /**
+     * Stores a schema with the given identifier if the existing schema satisfies a condition. The condition is
+     * checked and the schema is written atomically.
+     *
+     * @param id        The unique identifier of the JSON schema.
+     * @param schema    The JSON schema.
+     * @param overwrite If false and no ETags are given, the schema is only stored if it doesn't exist yet.
+     * @param ifMatch   A list of ETags in the format of the If-Match header, or null. If given, the schema is only
+     *                  stored if it exists and its ETag is in the list (or the list is "*").
+     * @return The stored schema, or null if the condition doesn't hold.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if the schema can't be encoded.
+     */
+    public StoredSchema put(String id, JsonNode schema, boolean overwrite, String ifMatch)
+            throws DatabaseProviderException, IOException {
+        byte[] payload = encodePayload(schema);
+
+        Lock lock = writeLocks.get(id);
+        lock.lock();
+        try {
+            byte[] current = databaseGet(id);
+            StoredSchema existing = current == null ? null : new StoredSchema(current);
+            if (ifMatch != null ? existing == null || !existing.matches(ifMatch, false) : existing != null && !overwrite) {
+                return null;
+            }
+
+            byte[] value = withHeader(payload, existing == null ? 1 : existing.getVersion() + 1);
+            databasePut(id, value);
+            return new StoredSchema(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores several schemas atomically. Either all the schemas are stored, or none are.
+     *
+     * @param schemas   The JSON schemas by their unique identifiers.
+     * @param overwrite If false, the schemas are only stored if none of them exists yet.
+     * @return The identifiers of the existing schemas which prevented the schemas from being stored, or an empty
+     * list if they were stored.
+     * @throws DatabaseProviderException if a database error occurs.
+     * @throws IOException               if a schema can't be encoded.
+     */
+    public List<String> putAll(Map<String, JsonNode> schemas, boolean overwrite)
+            throws DatabaseProviderException, IOException {
+        List<String> ids = new ArrayList<>(schemas.size());
+        List<byte[]> keys = new ArrayList<>(schemas.size());
+        List<byte[]> payloads = new ArrayList<>(schemas.size());
+        for (Map.Entry<String, JsonNode> schema : schemas.entrySet()) {
+            ids.add(schema.getKey());
+            keys.add(key(schema.getKey()));
+            payloads.add(encodePayload(schema.getValue()));
+        }
+
+        // Stripes are always locked in the same order, so concurrent imports can't deadlock
+        List<Lock> locks = new ArrayList<>();
+        for (Lock lock : writeLocks.bulkGet(ids)) {
+            lock.lock();
+            locks.add(lock);
+        }
+        try {
+            List<byte[]> current;
+            try (ValidatorMetrics.Sample ignored = metrics.database("multiGet")) {
+                current = databaseProvider.multiGet(keys);
+            }
+
+            List<String> existing = new ArrayList<>();
+            List<byte[]> values = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                long version = 0;
+                if (current.get(i) != null) {
+                    existing.add(ids.get(i));
+                    version = new StoredSchema(current.get(i)).getVersion();
+                }
+                values.add(withHeader(payloads.get(i), version + 1));
+            }
+            if (!overwrite && !existing.isEmpty()) {
+                return existing;
+            }
+
+            try (ValidatorMetrics.Sample ignored = metrics.database("writeBatch")) {
+                databaseProvider.writeBatch(keys, values);
+            }
+            changeFeed.changed();
+            return new ArrayList<>();
+        } finally {
+            for (Lock lock : Lists.reverse(locks)) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A stored schema, along with its version and content hash.
+     */
+    public static final class StoredSchema {
+        private final byte[] value;
+        private final long version;
+        private final String hash;
+
+        private StoredSchema(byte[] value) {
+            this.value = value;
+            if (isVersioned(value)) {
+                this.version = ByteBuffer.wrap(value, HEADER_LENGTH_V1, Long.BYTES).getLong();
+                this.hash = HashCode.fromBytes(Arrays.copyOfRange(value, HEADER_LENGTH_V1 + Long.BYTES,
+                        HEADER_LENGTH_V2)).toString();
+            } else {
+                this.version = 0;
+                this.hash = HASH_FUNCTION.hashBytes(value).toString();
+            }
+        }
+
+        /**
+         * @return The version of the schema, incremented by every write.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The hexadecimal hash of the stored content.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return The quoted entity tag of the schema, made up of its version and hash.
+         */
+        public String getEtag() {
+            return String.format("\"%d-%s\"", version, hash);
+        }
+
+        /**
+         * Checks the schema against a list of entity tags, in the format of the If-Match and If-None-Match headers.
+         * The ETag of the schema is strong, so weak tags only match it with the weak comparison of If-None-Match,
+         * never with the strong comparison of If-Match (RFC 7232, section 2.3.2).
+         *
+         * @param etags A comma-separated list of quoted entity tags, or "*".
+         * @param weak  If true, weak tags are compared as if they were strong.
+         * @return true if the list is "*" or contains the ETag of the schema.
+         */
+        public boolean matches(String etags, boolean weak) {
+            String etag = getEtag();
+            for (String candidate : etags.split(",")) {
+                candidate = candidate.trim();
+                if (weak && candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Writes the schema as JSON text, transcoding it token by token.
+         *
+         * @param out    The stream the JSON text is written to.
+         * @param pretty If true, the JSON text is pretty-printed.
+         * @throws IOException if the schema can't be decoded or written.
+         */
+        public void writeJson(OutputStream out, boolean pretty) throws IOException {
+            try (JsonParser parser = createParser(value);
+                 JsonGenerator generator = JSON_MAPPER.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                if (pretty) {
+                    generator.useDefaultPrettyPrinter();
+                }
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        }
+    }
+}
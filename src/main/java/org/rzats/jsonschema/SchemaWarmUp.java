@@ -0,0 +1,137 @@
+package org.rzats.jsonschema;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.rzats.jsonschema.database.DatabaseProviderException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Precompiles the stored schemas into the {@link SchemaCache} when the application starts, so the first requests
+ * against each schema don't pay for loading and compiling it.
+ * <p>
+ * Warm-up starts in the background once the application is ready, and compiles every stored schema in parallel - or,
+ * with schema.warmup.limit, only the first ones in key order, since schemas beyond the size of the cache would only
+ * evict each other. Usage isn't known before the first requests, so the limit can't pick the most used schemas. Until it is over, this health indicator reports the application as OUT_OF_SERVICE, so
+ * /health answers with HTTP 503 and load balancers can hold traffic back. If the schemas can't be listed, it reports
+ * the application as DOWN with the error, and warm-up is retried every schema.warmup.retry-delay milliseconds.
+ */
+@Component
+public class SchemaWarmUp implements ApplicationListener<ApplicationReadyEvent>, HealthIndicator {
+    private final AtomicInteger compiled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final SchemaStore schemaStore;
+    private final SchemaCache schemaCache;
+    private final boolean enabled;
+    private final int limit;
+    private final int threads;
+    private final long retryDelay;
+    private volatile int total;
+    private volatile String error;
+    private volatile boolean done;
+
+    /**
+     * The class constructor.
+     *
+     * @param schemaStore The store the schemas are listed from.
+     * @param schemaCache The cache the schemas are compiled into.
+     * @param enabled     If false, the application is reported as ready straight away.
+     * @param limit       The number of schemas to compile, in key order, or 0 to compile all of them.
+     * @param threads     The number of threads compiling schemas, or 0 to use one per available processor.
+     * @param retryDelay  How long to wait after failing to list the schemas before retrying, in milliseconds.
+     */
+    @Autowired
+    public SchemaWarmUp(SchemaStore schemaStore, SchemaCache schemaCache,
+                        @Value("${schema.warmup.enabled:true}") boolean enabled,
+                        @Value("${schema.warmup.limit:0}") int limit,
+                        @Value("${schema.warmup.threads:0}") int threads,
+                        @Value("${schema.warmup.retry-delay:1000}") long retryDelay) {
+        this.schemaStore = schemaStore;
+        this.schemaCache = schemaCache;
+        this.enabled = enabled;
+        this.limit = limit;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.retryDelay = retryDelay;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            done = true;
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (!warmUp()) {
+                    Thread.sleep(retryDelay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "schema-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Compiles the stored schemas, waiting until all of them have been compiled. Schemas which fail to compile are
+     * counted and skipped.
+     *
+     * @return False if the schemas couldn't be listed, so warm-up isn't over.
+     * @throws InterruptedException If interrupted while waiting for the schemas to be compiled.
+     */
+    public boolean warmUp() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("schema-warmup-%d").setDaemon(true).build());
+        try {
+            List<String> ids = schemaStore.ids(limit);
+            total = ids.size();
+
+            List<Callable<Void>> tasks = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                tasks.add(() -> {
+                    try {
+                        schemaCache.get(id);
+                        compiled.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+            error = null;
+            done = true;
+            return true;
+        } catch (DatabaseProviderException e) {
+            error = String.format("Database exception: %s", e.getMessage());
+            return false;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = done ? Health.up() : error != null ? Health.down() : Health.outOfService();
+        builder.withDetail("schemas", total)
+                .withDetail("compiled", compiled.get())
+                .withDetail("failed", failed.get());
+        if (error != null) {
+            builder.withDetail("error", error);
+        }
+        return builder.build();
+    }
+}
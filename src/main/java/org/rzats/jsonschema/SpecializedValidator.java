@@ -0,0 +1,619 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jackson.jsonpointer.JsonPointer;
+import com.github.fge.jackson.jsonpointer.JsonPointerException;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.github.fge.jsonschema.processors.syntax.SyntaxValidator;
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableSet;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks documents against a schema with a tree of checks compiled from the schema once, instead of walking the
+ * generic keyword validators of the validation processor.
+ * <p>
+ * Each subschema is compiled into a check which dispatches on the type of the value with a switch, then runs only the
+ * keywords of that type - with bounds unboxed, enums of strings in hash sets, regular expressions precompiled, and
+ * local {@code $ref}s linked straight to the check of the schema they point to. Checks only answer whether a value
+ * is valid, so nothing is allocated for valid documents; the validation processor is run again to report the errors
+ * of invalid documents. Subschemas using a keyword which isn't compiled (format, references to other schemas or
+ * scopes...) are checked by the validation processor. Schemas which aren't syntactically valid draft v4 schemas
+ * aren't compiled at all (see {@link #isSupported()}).
+ * <p>
+ * Regular expressions are precompiled {@link EcmaRegex}es, matched within the budget of the document.
+ */
+public class SpecializedValidator {
+    private static final SyntaxValidator SYNTAX_VALIDATOR = JsonSchemaFactory.byDefault().getSyntaxValidator();
+    private static final Equivalence<JsonNode> EQUIVALENCE = JsonNumEquals.getInstance();
+    private static final Set<String> DRAFT_V4_URIS = ImmutableSet.of(
+            "http://json-schema.org/draft-04/schema#", "http://json-schema.org/draft-04/schema");
+
+    private static final int OBJECT = 1;
+    private static final int ARRAY = 1 << 1;
+    private static final int STRING = 1 << 2;
+    private static final int INTEGER = 1 << 3;
+    private static final int NUMBER = 1 << 4;
+    private static final int BOOLEAN = 1 << 5;
+    private static final int NULL = 1 << 6;
+    private static final Map<String, Integer> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("object", OBJECT);
+        TYPES.put("array", ARRAY);
+        TYPES.put("string", STRING);
+        TYPES.put("integer", INTEGER);
+        // Integers are numbers too
+        TYPES.put("number", NUMBER | INTEGER);
+        TYPES.put("boolean", BOOLEAN);
+        TYPES.put("null", NULL);
+    }
+
+    private final CompiledSchema schema;
+    private final JsonNode root;
+    private final Map<JsonPointer, Reference> references = new HashMap<>();
+    private final boolean localReferences;
+    private final Check check;
+
+    /**
+     * The class constructor.
+     *
+     * @param schema The compiled schema, used for the subschemas which aren't compiled.
+     * @param node   The JSON schema.
+     */
+    public SpecializedValidator(CompiledSchema schema, JsonNode node) {
+        this.schema = schema;
+        this.root = node;
+        // Scopes changed by id would change how references are resolved
+        this.localReferences = !hasScope(node);
+        this.check = isCompilable(node) ? compile(JsonPointer.empty()) : null;
+    }
+
+    /**
+     * @return true if the schema was compiled, false if it must be validated by the validation processor.
+     */
+    public boolean isSupported() {
+        return check != null;
+    }
+
+    /**
+     * Checks whether a document is valid.
+     *
+     * @param instance The JSON document.
+     * @return true if the document is valid.
+     * @throws ProcessingException   if the schema can't be processed.
+     * @throws IllegalStateException if the schema isn't supported.
+     */
+    public boolean isValid(JsonNode instance) throws ProcessingException {
+        if (check == null) {
+            throw new IllegalStateException("The schema can't be compiled");
+        }
+        return check.test(instance);
+    }
+
+    /**
+     * @param node The JSON schema.
+     * @return true if the schema is a syntactically valid draft v4 schema.
+     */
+    private static boolean isCompilable(JsonNode node) {
+        for (JsonNode version : node.findValues("$schema")) {
+            if (!version.isTextual() || !DRAFT_V4_URIS.contains(version.textValue())) {
+                return false;
+            }
+        }
+        return SYNTAX_VALIDATOR.schemaIsValid(node);
+    }
+
+    /**
+     * @param node The JSON schema, or any part of it.
+     * @return true if the schema changes the resolution scope of its subschemas with the id keyword.
+     */
+    private static boolean hasScope(JsonNode node) {
+        if (node.path("id").isTextual()) {
+            return true;
+        }
+        for (JsonNode child : node) {
+            if (hasScope(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the subschema at a pointer, or links to it if it is already being compiled.
+     *
+     * @param pointer The pointer to the subschema in the root schema.
+     * @return The check of the subschema.
+     */
+    private Check compile(JsonPointer pointer) {
+        Reference reference = references.get(pointer);
+        if (reference != null) {
+            // Compiled already, or being compiled higher up in a recursive schema
+            return reference.target != null ? reference.target : reference;
+        }
+        reference = new Reference();
+        references.put(pointer, reference);
+        reference.target = compileSchema(pointer, pointer.get(root));
+        return reference.target;
+    }
+
+    private Check compileSchema(JsonPointer pointer, JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return fallback(pointer);
+        }
+        if (node.has("$ref")) {
+            // The other keywords of a schema with a reference are ignored
+            JsonPointer target = resolve(pointer, node.get("$ref"));
+            return target == null ? fallback(pointer) : compile(target);
+        }
+        if (node.has("format")) {
+            return fallback(pointer);
+        }
+
+        int types = OBJECT | ARRAY | STRING | INTEGER | NUMBER | BOOLEAN | NULL;
+        List<Check> any = new ArrayList<>();
+        List<Check> objects = new ArrayList<>();
+        List<Check> arrays = new ArrayList<>();
+        List<Check> strings = new ArrayList<>();
+        List<Check> numbers = new ArrayList<>();
+
+        JsonNode type = node.get("type");
+        if (type != null) {
+            types = 0;
+            Iterable<JsonNode> names = type.isArray() ? type : Collections.singleton(type);
+            for (JsonNode name : names) {
+                types |= TYPES.get(name.textValue());
+            }
+        }
+        if (node.has("enum")) {
+            any.add(compileEnum(node.get("enum")));
+        }
+        compileCombinations(pointer, node, any);
+        compileNumber(node, numbers);
+        compileString(node, strings);
+        compileArray(pointer, node, arrays);
+        compileObject(pointer, node, objects);
+
+        return new SchemaCheck(types, toArray(any), toArray(objects), toArray(arrays), toArray(strings), toArray(numbers));
+    }
+
+    /**
+     * Resolves a reference to another part of the schema.
+     *
+     * @param pointer The pointer to the schema with the reference.
+     * @param ref     The value of the $ref keyword.
+     * @return The pointer to the referenced subschema, or null if the reference doesn't point into this schema, or
+     * only leads to more references.
+     */
+    private JsonPointer resolve(JsonPointer pointer, JsonNode ref) {
+        Set<JsonPointer> visited = new HashSet<>();
+        visited.add(pointer);
+        while (localReferences) {
+            JsonPointer target;
+            try {
+                URI uri = new URI(ref.textValue());
+                if (uri.isAbsolute() || !uri.getSchemeSpecificPart().isEmpty() || uri.getFragment() == null) {
+                    return null;
+                }
+                target = new JsonPointer(uri.getFragment());
+            } catch (URISyntaxException | JsonPointerException e) {
+                return null;
+            }
+
+            JsonNode node = target.get(root);
+            if (node == null || !node.isObject() || !visited.add(target)) {
+                // Missing schemas and reference loops are left for the validation processor to report
+                return null;
+            }
+            ref = node.get("$ref");
+            if (ref == null) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private Check fallback(JsonPointer pointer) {
+        return instance -> schema.isValid(pointer, instance);
+    }
+
+    private static Check compileEnum(JsonNode values) {
+        Set<String> strings = new HashSet<>();
+        for (JsonNode value : values) {
+            if (!value.isTextual()) {
+                strings = null;
+                break;
+            }
+            strings.add(value.textValue());
+        }
+        if (strings != null) {
+            Set<String> allowed = strings;
+            return instance -> instance.isTextual() && allowed.contains(instance.textValue());
+        }
+        List<JsonNode> allowed = new ArrayList<>();
+        values.forEach(allowed::add);
+        return instance -> {
+            for (JsonNode value : allowed) {
+                if (EQUIVALENCE.equivalent(instance, value)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private void compileCombinations(JsonPointer pointer, JsonNode node, List<Check> checks) {
+        if (node.has("allOf")) {
+            Check[] all = compileArray(pointer.append("allOf"), node.get("allOf"));
+            checks.add(instance -> {
+                for (Check check : all) {
+                    if (!check.test(instance)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+        if (node.has("anyOf")) {
+            Check[] any = compileArray(pointer.append("anyOf"), node.get("anyOf"));
+            checks.add(instance -> {
+                for (Check check : any) {
+                    if (check.test(instance)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        if (node.has("oneOf")) {
+            Check[] one = compileArray(pointer.append("oneOf"), node.get("oneOf"));
+            checks.add(instance -> {
+                int matches = 0;
+                for (Check check : one) {
+                    if (check.test(instance) && ++matches > 1) {
+                        return false;
+                    }
+                }
+                return matches == 1;
+            });
+        }
+        if (node.has("not")) {
+            Check not = compile(pointer.append("not"));
+            checks.add(instance -> !not.test(instance));
+        }
+    }
+
+    private void compileNumber(JsonNode node, List<Check> checks) {
+        if (node.has("minimum")) {
+            checks.add(compileBound(node.get("minimum"), node.path("exclusiveMinimum").asBoolean(), false));
+        }
+        if (node.has("maximum")) {
+            checks.add(compileBound(node.get("maximum"), node.path("exclusiveMaximum").asBoolean(), true));
+        }
+        if (node.has("multipleOf")) {
+            JsonNode divisor = node.get("multipleOf");
+            BigDecimal decimal = divisor.decimalValue();
+            if (isLong(divisor)) {
+                long value = divisor.longValue();
+                checks.add(instance -> isLong(instance)
+                        ? instance.longValue() % value == 0
+                        : instance.decimalValue().remainder(decimal).signum() == 0);
+            } else {
+                checks.add(instance -> instance.decimalValue().remainder(decimal).signum() == 0);
+            }
+        }
+    }
+
+    private static Check compileBound(JsonNode bound, boolean exclusive, boolean maximum) {
+        // The sign of the comparison with the bound which fails the check
+        int failing = maximum ? 1 : -1;
+        BigDecimal decimal = bound.decimalValue();
+        if (isLong(bound)) {
+            long value = bound.longValue();
+            return instance -> {
+                int comparison = isLong(instance)
+                        ? Long.compare(instance.longValue(), value)
+                        : instance.decimalValue().compareTo(decimal);
+                return Integer.signum(comparison) != failing && !(exclusive && comparison == 0);
+            };
+        }
+        return instance -> {
+            int comparison = instance.decimalValue().compareTo(decimal);
+            return Integer.signum(comparison) != failing && !(exclusive && comparison == 0);
+        };
+    }
+
+    private static boolean isLong(JsonNode number) {
+        return number.isIntegralNumber() && number.canConvertToLong();
+    }
+
+    private static void compileString(JsonNode node, List<Check> checks) {
+        int minLength = node.path("minLength").asInt(-1);
+        int maxLength = node.path("maxLength").asInt(-1);
+        if (minLength >= 0 || maxLength >= 0) {
+            checks.add(instance -> {
+                // Lengths count code points, not chars
+                String value = instance.textValue();
+                int length = value.codePointCount(0, value.length());
+                return length >= minLength && (maxLength < 0 || length <= maxLength);
+            });
+        }
+        if (node.has("pattern")) {
+            EcmaRegex regex = new EcmaRegex(node.get("pattern").textValue());
+            checks.add(instance -> regex.find(instance.textValue()));
+        }
+    }
+
+    private void compileArray(JsonPointer pointer, JsonNode node, List<Check> checks) {
+        int minItems = node.path("minItems").asInt(-1);
+        int maxItems = node.path("maxItems").asInt(-1);
+        if (minItems >= 0 || maxItems >= 0) {
+            checks.add(instance -> instance.size() >= minItems && (maxItems < 0 || instance.size() <= maxItems));
+        }
+        if (node.path("uniqueItems").asBoolean()) {
+            checks.add(instance -> {
+                Set<Equivalence.Wrapper<JsonNode>> items = new HashSet<>();
+                for (JsonNode item : instance) {
+                    if (!items.add(EQUIVALENCE.wrap(item))) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+
+        JsonNode items = node.get("items");
+        if (items != null && items.isObject()) {
+            Check item = compile(pointer.append("items"));
+            checks.add(instance -> {
+                for (JsonNode element : instance) {
+                    if (!item.test(element)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        } else if (items != null) {
+            Check[] tuple = compileArray(pointer.append("items"), items);
+            JsonNode additionalItems = node.get("additionalItems");
+            boolean additionalAllowed = additionalItems == null || !additionalItems.isBoolean() || additionalItems.booleanValue();
+            Check additional = additionalItems != null && additionalItems.isObject() ? compile(pointer.append("additionalItems")) : null;
+            checks.add(instance -> {
+                if (!additionalAllowed && instance.size() > tuple.length) {
+                    return false;
+                }
+                for (int i = 0; i < instance.size(); i++) {
+                    Check check = i < tuple.length ? tuple[i] : additional;
+                    if (check != null && !check.test(instance.get(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+    }
+
+    private void compileObject(JsonPointer pointer, JsonNode node, List<Check> checks) {
+        int minProperties = node.path("minProperties").asInt(-1);
+        int maxProperties = node.path("maxProperties").asInt(-1);
+        if (minProperties >= 0 || maxProperties >= 0) {
+            checks.add(instance -> instance.size() >= minProperties && (maxProperties < 0 || instance.size() <= maxProperties));
+        }
+        if (node.has("required")) {
+            String[] required = new String[node.get("required").size()];
+            for (int i = 0; i < required.length; i++) {
+                required[i] = node.get("required").get(i).textValue();
+            }
+            checks.add(instance -> {
+                for (String name : required) {
+                    if (!instance.has(name)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+        if (node.has("dependencies")) {
+            checks.add(compileDependencies(pointer.append("dependencies"), node.get("dependencies")));
+        }
+
+        Map<String, Check> properties = new HashMap<>();
+        Iterator<String> names = node.path("properties").fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            properties.put(name, compile(pointer.append("properties").append(name)));
+        }
+        Map<EcmaRegex, Check> patternProperties = new LinkedHashMap<>();
+        names = node.path("patternProperties").fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            patternProperties.put(new EcmaRegex(name), compile(pointer.append("patternProperties").append(name)));
+        }
+        JsonNode additionalProperties = node.get("additionalProperties");
+        boolean additionalAllowed = additionalProperties == null || !additionalProperties.isBoolean()
+                || additionalProperties.booleanValue();
+        Check additional = additionalProperties != null && additionalProperties.isObject()
+                ? compile(pointer.append("additionalProperties")) : null;
+        if (properties.isEmpty() && patternProperties.isEmpty() && additionalAllowed && additional == null) {
+            return;
+        }
+
+        checks.add(instance -> {
+            Iterator<Map.Entry<String, JsonNode>> fields = instance.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                boolean matched = false;
+                Check property = properties.get(field.getKey());
+                if (property != null) {
+                    matched = true;
+                    if (!property.test(field.getValue())) {
+                        return false;
+                    }
+                }
+                for (Map.Entry<EcmaRegex, Check> pattern : patternProperties.entrySet()) {
+                    if (pattern.getKey().find(field.getKey())) {
+                        matched = true;
+                        if (!pattern.getValue().test(field.getValue())) {
+                            return false;
+                        }
+                    }
+                }
+                if (!matched && (!additionalAllowed || (additional != null && !additional.test(field.getValue())))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private Check compileDependencies(JsonPointer pointer, JsonNode dependencies) {
+        Map<String, Check> checks = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = dependencies.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isObject()) {
+                checks.put(field.getKey(), compile(pointer.append(field.getKey())));
+                continue;
+            }
+            List<String> required = new ArrayList<>();
+            field.getValue().forEach(name -> required.add(name.textValue()));
+            checks.put(field.getKey(), instance -> {
+                for (String name : required) {
+                    if (!instance.has(name)) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        }
+        return instance -> {
+            for (Map.Entry<String, Check> dependency : checks.entrySet()) {
+                if (instance.has(dependency.getKey()) && !dependency.getValue().test(instance)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private Check[] compileArray(JsonPointer pointer, JsonNode schemas) {
+        Check[] checks = new Check[schemas.size()];
+        for (int i = 0; i < checks.length; i++) {
+            checks[i] = compile(pointer.append(i));
+        }
+        return checks;
+    }
+
+    private static Check[] toArray(List<Check> checks) {
+        return checks.isEmpty() ? null : checks.toArray(new Check[checks.size()]);
+    }
+
+    /**
+     * A compiled check of a value.
+     */
+    @FunctionalInterface
+    private interface Check {
+        /**
+         * @param instance The value.
+         * @return true if the value is valid.
+         * @throws ProcessingException if the schema can't be processed.
+         */
+        boolean test(JsonNode instance) throws ProcessingException;
+    }
+
+    /**
+     * The check of a schema which is referenced before it has been compiled.
+     */
+    private static final class Reference implements Check {
+        private Check target;
+
+        @Override
+        public boolean test(JsonNode instance) throws ProcessingException {
+            return target.test(instance);
+        }
+    }
+
+    /**
+     * The check of a whole schema: the type, the keywords applying to values of any type, and the keywords applying
+     * to the type of the value. Empty lists of keywords are null.
+     */
+    private static final class SchemaCheck implements Check {
+        private final int types;
+        private final Check[] any;
+        private final Check[] objects;
+        private final Check[] arrays;
+        private final Check[] strings;
+        private final Check[] numbers;
+
+        private SchemaCheck(int types, Check[] any, Check[] objects, Check[] arrays, Check[] strings, Check[] numbers) {
+            this.types = types;
+            this.any = any;
+            this.objects = objects;
+            this.arrays = arrays;
+            this.strings = strings;
+            this.numbers = numbers;
+        }
+
+        private static boolean all(Check[] checks, JsonNode instance) throws ProcessingException {
+            if (checks != null) {
+                for (Check check : checks) {
+                    if (!check.test(instance)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean test(JsonNode instance) throws ProcessingException {
+            int type;
+            Check[] checks;
+            switch (instance.getNodeType()) {
+                case OBJECT:
+                    type = OBJECT;
+                    checks = objects;
+                    break;
+                case ARRAY:
+                    type = ARRAY;
+                    checks = arrays;
+                    break;
+                case STRING:
+                    type = STRING;
+                    checks = strings;
+                    break;
+                case NUMBER:
+                    type = instance.isIntegralNumber() ? INTEGER : NUMBER;
+                    checks = numbers;
+                    break;
+                case BOOLEAN:
+                    type = BOOLEAN;
+                    checks = null;
+                    break;
+                case NULL:
+                    type = NULL;
+                    checks = null;
+                    break;
+                default:
+                    // Binary, POJO and missing nodes can't come from JSON text
+                    return false;
+            }
+            return (types & type) != 0 && all(checks, instance) && all(any, instance);
+        }
+    }
+}
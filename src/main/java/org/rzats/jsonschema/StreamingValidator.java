@@ -0,0 +1,741 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jackson.JacksonUtils;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jackson.NodeType;
+import com.github.fge.jackson.jsonpointer.JsonPointer;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ListProcessingReport;
+import com.github.fge.jsonschema.core.report.LogLevel;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Validates a document straight from its token stream, without building a tree of the whole document.
+ * <p>
+ * The draft v4 keywords which can be checked one token at a time (type, enum with scalar values, required,
+ * properties, additionalProperties, items, additionalItems, the numeric, length, item count and property count
+ * constraints, and annotations such as title or definitions) are checked while the document is read. Schemas using
+ * any other keyword ($ref, allOf, pattern, format, uniqueItems...) are handed to the regular validation processor,
+ * which only gets the subtree of the document they apply to. Memory therefore depends on the nesting depth of the
+ * document (and on the size of the subtrees validated by the processor), not on its total size - except that
+ * required and additionalProperties keep track of the property names of the objects they apply to.
+ * <p>
+ * Errors are reported with the same pointers and keywords, in the same order, as by the validation processor: the
+ * keywords of a value are checked in keyword order before its content, the members of an object are validated in
+ * name order, and the content of a container is only validated while the report has no errors. The errors of an
+ * object, or of an array with minItems, maxItems or additionalItems, are therefore held until it has been read
+ * (memory also depends on the number of errors), while the elements of other arrays are reported as they are read.
+ * Validation stops as soon as the report asks for it, without reading the rest of the document.
+ */
+public class StreamingValidator {
+    private static final ObjectMapper MAPPER = JacksonUtils.newMapper();
+    private static final Set<String> DRAFT_V4_URIS = ImmutableSet.of(
+            "http://json-schema.org/draft-04/schema#", "http://json-schema.org/draft-04/schema");
+
+    private final CompiledSchema schema;
+    private final Node root;
+
+    /**
+     * The class constructor.
+     *
+     * @param schema The compiled schema, used to validate the subtrees which can't be validated from the stream.
+     * @param node   The JSON schema.
+     */
+    public StreamingValidator(CompiledSchema schema, JsonNode node) {
+        this.schema = schema;
+        this.root = compile(node, JsonPointer.empty());
+    }
+
+    /**
+     * @return true if the whole document is validated from the stream, false if the validation processor is
+     * given the whole document.
+     */
+    public boolean isStreamable() {
+        return root.streamable;
+    }
+
+    /**
+     * Reads a single JSON document from a parser and validates it.
+     *
+     * @param parser The parser, positioned before the document.
+     * @param report The report the validation errors are logged to.
+     * @throws IOException         if the document is not valid JSON, or is followed by more content.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    public void validate(JsonParser parser, ProcessingReport report) throws IOException, ProcessingException {
+        if (parser.nextToken() == null) {
+            throw new JsonParseException(parser, "No JSON document to read");
+        }
+        validate(root, parser, null, report);
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after the JSON document");
+        }
+    }
+
+    /**
+     * Compiles a schema into the constraints checked while reading the document.
+     *
+     * @param schema  The JSON schema.
+     * @param pointer The pointer to the schema in the root schema.
+     * @return The compiled schema, marked as not streamable if it uses a keyword which can't be checked one token
+     * at a time, or isn't syntactically valid.
+     */
+    private static Node compile(JsonNode schema, JsonPointer pointer) {
+        Node node = new Node(pointer);
+        if (!schema.isObject()) {
+            return node.notStreamable();
+        }
+
+        Iterator<Map.Entry<String, JsonNode>> fields = schema.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!compileKeyword(node, field.getKey(), field.getValue(), pointer)) {
+                return node.notStreamable();
+            }
+        }
+        if ((node.exclusiveMinimum && node.minimum == null) || (node.exclusiveMaximum && node.maximum == null)) {
+            return node.notStreamable();
+        }
+        return node;
+    }
+
+    /**
+     * Compiles a single keyword of a schema.
+     *
+     * @param node    The compiled schema.
+     * @param keyword The keyword.
+     * @param value   The value of the keyword.
+     * @param pointer The pointer to the schema in the root schema.
+     * @return true if the keyword can be checked one token at a time.
+     */
+    private static boolean compileKeyword(Node node, String keyword, JsonNode value, JsonPointer pointer) {
+        switch (keyword) {
+            case "$schema":
+                return value.isTextual() && DRAFT_V4_URIS.contains(value.textValue());
+            case "id":
+            case "title":
+            case "description":
+                return value.isTextual();
+            case "default":
+                return true;
+            case "definitions":
+                // Definitions are only used through $ref, which is handed to the validation processor
+                return value.isObject();
+            case "type":
+                node.types = compileTypes(value);
+                return node.types != null;
+            case "enum":
+                if (!value.isArray() || value.size() == 0) {
+                    return false;
+                }
+                for (JsonNode element : value) {
+                    if (element.isContainerNode()) {
+                        return false;
+                    }
+                }
+                node.enumValues = value;
+                node.unconstrained = false;
+                return true;
+            case "minimum":
+                node.minimum = value.isNumber() ? value.decimalValue() : null;
+                node.unconstrained = false;
+                return node.minimum != null;
+            case "maximum":
+                node.maximum = value.isNumber() ? value.decimalValue() : null;
+                node.unconstrained = false;
+                return node.maximum != null;
+            case "exclusiveMinimum":
+                node.exclusiveMinimum = value.asBoolean();
+                return value.isBoolean();
+            case "exclusiveMaximum":
+                node.exclusiveMaximum = value.asBoolean();
+                return value.isBoolean();
+            case "multipleOf":
+                node.multipleOf = value.isNumber() ? value.decimalValue() : null;
+                node.unconstrained = false;
+                return node.multipleOf != null && node.multipleOf.signum() > 0;
+            case "minLength":
+                node.minLength = count(value);
+                node.unconstrained = false;
+                return node.minLength >= 0;
+            case "maxLength":
+                node.maxLength = count(value);
+                node.unconstrained = false;
+                return node.maxLength >= 0;
+            case "minItems":
+                node.minItems = count(value);
+                node.unconstrained = false;
+                return node.minItems >= 0;
+            case "maxItems":
+                node.maxItems = count(value);
+                node.unconstrained = false;
+                return node.maxItems >= 0;
+            case "minProperties":
+                node.minProperties = count(value);
+                node.unconstrained = false;
+                return node.minProperties >= 0;
+            case "maxProperties":
+                node.maxProperties = count(value);
+                node.unconstrained = false;
+                return node.maxProperties >= 0;
+            case "required":
+                if (!value.isArray() || value.size() == 0) {
+                    return false;
+                }
+                for (JsonNode element : value) {
+                    if (!element.isTextual() || !node.required.add(element.textValue())) {
+                        return false;
+                    }
+                }
+                node.unconstrained = false;
+                return true;
+            case "properties":
+                if (!value.isObject()) {
+                    return false;
+                }
+                Iterator<Map.Entry<String, JsonNode>> properties = value.fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    node.properties.put(property.getKey(),
+                            compile(property.getValue(), pointer.append(keyword).append(property.getKey())));
+                }
+                node.unconstrained = false;
+                return true;
+            case "additionalProperties":
+                node.unconstrained = false;
+                if (value.isBoolean()) {
+                    node.additionalPropertiesAllowed = value.booleanValue();
+                    return true;
+                }
+                node.additionalProperties = compile(value, pointer.append(keyword));
+                return value.isObject();
+            case "items":
+                node.unconstrained = false;
+                if (value.isArray()) {
+                    node.tupleItems = new ArrayList<>(value.size());
+                    for (int i = 0; i < value.size(); i++) {
+                        node.tupleItems.add(compile(value.get(i), pointer.append(keyword).append(i)));
+                    }
+                    return true;
+                }
+                node.items = compile(value, pointer.append(keyword));
+                return value.isObject();
+            case "additionalItems":
+                node.unconstrained = false;
+                if (value.isBoolean()) {
+                    node.additionalItemsAllowed = value.booleanValue();
+                    return true;
+                }
+                node.additionalItems = compile(value, pointer.append(keyword));
+                return value.isObject();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param value The value of the type keyword.
+     * @return The allowed types, or null if the value isn't valid.
+     */
+    private static Set<NodeType> compileTypes(JsonNode value) {
+        Set<NodeType> types = EnumSet.noneOf(NodeType.class);
+        if (value.isTextual()) {
+            NodeType type = NodeType.fromName(value.textValue());
+            if (type == null) {
+                return null;
+            }
+            types.add(type);
+            return types;
+        }
+        if (!value.isArray() || value.size() == 0) {
+            return null;
+        }
+        for (JsonNode element : value) {
+            NodeType type = element.isTextual() ? NodeType.fromName(element.textValue()) : null;
+            if (type == null || !types.add(type)) {
+                return null;
+            }
+        }
+        return types;
+    }
+
+    /**
+     * @param value The value of a length or count keyword.
+     * @return The value, or -1 if it isn't a non-negative integer.
+     */
+    private static int count(JsonNode value) {
+        return value.isIntegralNumber() && value.canConvertToInt() && value.intValue() >= 0 ? value.intValue() : -1;
+    }
+
+    /**
+     * @param token The first token of a value.
+     * @return The type of the value.
+     */
+    private static NodeType nodeType(JsonToken token) {
+        switch (token) {
+            case START_OBJECT:
+                return NodeType.OBJECT;
+            case START_ARRAY:
+                return NodeType.ARRAY;
+            case VALUE_STRING:
+                return NodeType.STRING;
+            case VALUE_NUMBER_INT:
+                return NodeType.INTEGER;
+            case VALUE_NUMBER_FLOAT:
+                return NodeType.NUMBER;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return NodeType.BOOLEAN;
+            default:
+                return NodeType.NULL;
+        }
+    }
+
+    /**
+     * Records a validation error of a value.
+     *
+     * @param errors  The errors of the value, by keyword.
+     * @param path    The path to the value.
+     * @param keyword The keyword which failed.
+     * @param message The error message.
+     */
+    private static void error(Map<String, ProcessingMessage> errors, Path path, String keyword, String message) {
+        errors.put(keyword, new ProcessingMessage()
+                .setMessage(message)
+                .put("domain", "validation")
+                .put("keyword", keyword)
+                .put("instance", JacksonUtils.nodeFactory().objectNode().put("pointer", Path.toPointer(path).toString())));
+    }
+
+    /**
+     * Logs validation errors to a report.
+     *
+     * @param report   The report.
+     * @param messages The errors.
+     * @throws ProcessingException if the report doesn't accept errors.
+     */
+    private static void log(ProcessingReport report, Iterable<ProcessingMessage> messages) throws ProcessingException {
+        for (ProcessingMessage message : messages) {
+            report.error(message);
+        }
+    }
+
+    /**
+     * @param node  The compiled schema of an array.
+     * @param index The index of an element.
+     * @return The compiled schema of the element, or null if the element isn't constrained.
+     */
+    private static Node itemSchema(Node node, int index) {
+        if (node.tupleItems == null) {
+            return node.items;
+        }
+        return index < node.tupleItems.size() ? node.tupleItems.get(index) : node.additionalItems;
+    }
+
+    /**
+     * Validates the value the parser is positioned on, leaving the parser on its last token, and logs its errors
+     * once every error which the validation processor would report before them has been logged.
+     * <p>
+     * The elements of an array are logged as soon as they are read, unless the array has keywords which depend on
+     * its element count. The errors of any other value are held until the value has been read.
+     *
+     * @param node   The compiled schema.
+     * @param parser The parser.
+     * @param path   The path to the value.
+     * @param report The report the validation errors are logged to.
+     * @throws IOException         if the document is not valid JSON.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    private void validate(Node node, JsonParser parser, Path path, ProcessingReport report)
+            throws IOException, ProcessingException {
+        if (!node.streamable || parser.getCurrentToken() != JsonToken.START_ARRAY || node.checksItemCount()) {
+            Result result = evaluate(node, parser, path);
+            if (result != null) {
+                result.log(report);
+            }
+            return;
+        }
+
+        Map<String, ProcessingMessage> errors = new TreeMap<>();
+        validateFirstToken(node, JsonToken.START_ARRAY, path, errors);
+        log(report, errors.values());
+        if (node.unconstrained || !report.isSuccess()) {
+            parser.skipChildren();
+            return;
+        }
+
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            Node child = itemSchema(node, index);
+            if (child == null) {
+                parser.skipChildren();
+            } else {
+                validate(child, parser, new Path(path, null, index), report);
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Validates the value the parser is positioned on, leaving the parser on its last token.
+     *
+     * @param node   The compiled schema.
+     * @param parser The parser.
+     * @param path   The path to the value.
+     * @return The errors of the value, or null if it is valid.
+     * @throws IOException         if the document is not valid JSON.
+     * @throws ProcessingException if the schema can't be processed.
+     */
+    private Result evaluate(Node node, JsonParser parser, Path path) throws IOException, ProcessingException {
+        if (!node.streamable) {
+            // Only the subtree is materialized, and validated from the matching schema in the root schema
+            JsonPointer pointer = Path.toPointer(path);
+            ListProcessingReport subtreeReport = new ListProcessingReport(LogLevel.ERROR, LogLevel.FATAL);
+            schema.validate(node.pointer, pointer, MAPPER.readTree(parser), subtreeReport);
+            return subtreeReport.isSuccess() ? null : Result.ofSubtree(subtreeReport, pointer.toString());
+        }
+
+        Map<String, ProcessingMessage> errors = new TreeMap<>();
+        List<Result> children = new ArrayList<>();
+        JsonToken token = parser.getCurrentToken();
+        validateFirstToken(node, token, path, errors);
+        if (node.unconstrained) {
+            parser.skipChildren();
+        } else {
+            // The validation processor only validates the content of containers which are valid themselves
+            boolean descend = errors.isEmpty();
+            switch (token) {
+                case START_OBJECT:
+                    validateObject(node, parser, path, descend, errors, children);
+                    break;
+                case START_ARRAY:
+                    validateArray(node, parser, path, descend, errors, children);
+                    break;
+                case VALUE_STRING:
+                    validateString(node, parser.getText(), path, errors);
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    validateNumber(node, parser.getDecimalValue(), path, errors);
+                    break;
+                default:
+                    break;
+            }
+            if (node.enumValues != null && token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+                validateEnum(node, parser, path, errors);
+            }
+        }
+        return errors.isEmpty() && children.isEmpty()
+                ? null : new Result(new ArrayList<>(errors.values()), children, Collections.<ProcessingMessage>emptyList());
+    }
+
+    /**
+     * Checks the keywords which only depend on the first token of a value - type, and enum for containers (which
+     * never match, since enum values are all scalars).
+     *
+     * @param node   The compiled schema.
+     * @param token  The first token of the value.
+     * @param path   The path to the value.
+     * @param errors The errors of the value, by keyword.
+     */
+    private static void validateFirstToken(Node node, JsonToken token, Path path, Map<String, ProcessingMessage> errors) {
+        NodeType type = nodeType(token);
+        if (node.types != null && !node.types.contains(type)
+                && !(type == NodeType.INTEGER && node.types.contains(NodeType.NUMBER))) {
+            error(errors, path, "type", String.format("instance type (%s) does not match any allowed primitive type (allowed: %s)",
+                    type, node.types));
+        }
+        if (node.enumValues != null && (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)) {
+            enumError(node, path, errors);
+        }
+    }
+
+    private static void enumError(Node node, Path path, Map<String, ProcessingMessage> errors) {
+        error(errors, path, "enum", String.format("instance value not found in enum (possible values: %s)", node.enumValues));
+    }
+
+    private void validateObject(Node node, JsonParser parser, Path path, boolean descend,
+                                Map<String, ProcessingMessage> errors, List<Result> children)
+            throws IOException, ProcessingException {
+        Set<String> missing = node.required.isEmpty() ? null : new LinkedHashSet<>(node.required);
+        Set<String> disallowed = null;
+        // The validation processor visits the members in name order
+        SortedMap<String, Result> members = new TreeMap<>();
+        int count = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            count++;
+            if (missing != null) {
+                missing.remove(name);
+            }
+
+            Node child = node.properties.get(name);
+            if (child == null) {
+                if (!node.additionalPropertiesAllowed) {
+                    if (disallowed == null) {
+                        disallowed = new HashSet<>();
+                    }
+                    disallowed.add(name);
+                    parser.skipChildren();
+                    continue;
+                }
+                child = node.additionalProperties;
+            }
+            if (child == null || !descend) {
+                parser.skipChildren();
+                continue;
+            }
+            Result result = evaluate(child, parser, new Path(path, name, -1));
+            if (result != null) {
+                members.put(name, result);
+            }
+        }
+        children.addAll(members.values());
+
+        if (missing != null && !missing.isEmpty()) {
+            error(errors, path, "required", String.format("object has missing required properties (%s)", missing));
+        }
+        if (disallowed != null) {
+            error(errors, path, "additionalProperties",
+                    String.format("object instance has properties which are not allowed by the schema: %s", disallowed));
+        }
+        if (node.minProperties >= 0 && count < node.minProperties) {
+            error(errors, path, "minProperties", String.format("object has too few properties (found %d but schema requires at least %d)",
+                    count, node.minProperties));
+        }
+        if (node.maxProperties >= 0 && count > node.maxProperties) {
+            error(errors, path, "maxProperties", String.format("object has too many properties (found %d but schema requires at most %d)",
+                    count, node.maxProperties));
+        }
+    }
+
+    private void validateArray(Node node, JsonParser parser, Path path, boolean descend,
+                               Map<String, ProcessingMessage> errors, List<Result> children)
+            throws IOException, ProcessingException {
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            Node child = itemSchema(node, count);
+            if (child == null || !descend) {
+                parser.skipChildren();
+            } else {
+                Result result = evaluate(child, parser, new Path(path, null, count));
+                if (result != null) {
+                    children.add(result);
+                }
+            }
+            count++;
+        }
+
+        if (node.tupleItems != null && !node.additionalItemsAllowed && count > node.tupleItems.size()) {
+            error(errors, path, "additionalItems", String.format("array instance has too many elements (found %d but schema allows at most %d)",
+                    count, node.tupleItems.size()));
+        }
+        if (node.minItems >= 0 && count < node.minItems) {
+            error(errors, path, "minItems", String.format("array is too short: must have at least %d elements but instance has %d elements",
+                    node.minItems, count));
+        }
+        if (node.maxItems >= 0 && count > node.maxItems) {
+            error(errors, path, "maxItems", String.format("array is too long: must have at most %d elements but instance has %d elements",
+                    node.maxItems, count));
+        }
+    }
+
+    private void validateString(Node node, String value, Path path, Map<String, ProcessingMessage> errors) {
+        if (node.minLength < 0 && node.maxLength < 0) {
+            return;
+        }
+        int length = value.codePointCount(0, value.length());
+        if (node.minLength >= 0 && length < node.minLength) {
+            error(errors, path, "minLength", String.format("string is too short (length: %d, required minimum: %d)",
+                    length, node.minLength));
+        }
+        if (node.maxLength >= 0 && length > node.maxLength) {
+            error(errors, path, "maxLength", String.format("string is too long (length: %d, maximum allowed: %d)",
+                    length, node.maxLength));
+        }
+    }
+
+    private void validateNumber(Node node, BigDecimal value, Path path, Map<String, ProcessingMessage> errors) {
+        if (node.minimum != null) {
+            int comparison = value.compareTo(node.minimum);
+            if (comparison < 0 || (comparison == 0 && node.exclusiveMinimum)) {
+                error(errors, path, "minimum", String.format("numeric instance is %s the required minimum (minimum: %s, found: %s)",
+                        node.exclusiveMinimum ? "not strictly greater than" : "lower than", node.minimum, value));
+            }
+        }
+        if (node.maximum != null) {
+            int comparison = value.compareTo(node.maximum);
+            if (comparison > 0 || (comparison == 0 && node.exclusiveMaximum)) {
+                error(errors, path, "maximum", String.format("numeric instance is %s the required maximum (maximum: %s, found: %s)",
+                        node.exclusiveMaximum ? "not strictly lower than" : "greater than", node.maximum, value));
+            }
+        }
+        if (node.multipleOf != null && value.remainder(node.multipleOf).signum() != 0) {
+            error(errors, path, "multipleOf", String.format("remainder of division is not zero (%s / %s)", value, node.multipleOf));
+        }
+    }
+
+    private void validateEnum(Node node, JsonParser parser, Path path, Map<String, ProcessingMessage> errors)
+            throws IOException {
+        JsonNode value = MAPPER.readTree(parser);
+        for (JsonNode candidate : node.enumValues) {
+            if (JsonNumEquals.getInstance().equivalent(value, candidate)) {
+                return;
+            }
+        }
+        enumError(node, path, errors);
+    }
+
+    /**
+     * The constraints of a schema checked while reading the document.
+     */
+    private static final class Node {
+        private final JsonPointer pointer;
+        private final Set<String> required = new LinkedHashSet<>();
+        private final Map<String, Node> properties = new HashMap<>();
+        private boolean streamable = true;
+        private boolean unconstrained = true;
+        private Set<NodeType> types;
+        private JsonNode enumValues;
+        private BigDecimal minimum;
+        private BigDecimal maximum;
+        private boolean exclusiveMinimum;
+        private boolean exclusiveMaximum;
+        private BigDecimal multipleOf;
+        private int minLength = -1;
+        private int maxLength = -1;
+        private int minItems = -1;
+        private int maxItems = -1;
+        private int minProperties = -1;
+        private int maxProperties = -1;
+        private boolean additionalPropertiesAllowed = true;
+        private Node additionalProperties;
+        private Node items;
+        private List<Node> tupleItems;
+        private boolean additionalItemsAllowed = true;
+        private Node additionalItems;
+
+        private Node(JsonPointer pointer) {
+            this.pointer = pointer;
+        }
+
+        private Node notStreamable() {
+            streamable = false;
+            return this;
+        }
+
+        /**
+         * @return true if keywords of the schema depend on the number of elements of an array.
+         */
+        private boolean checksItemCount() {
+            return (tupleItems != null && !additionalItemsAllowed) || minItems >= 0 || maxItems >= 0;
+        }
+    }
+
+    /**
+     * The errors of a value which hasn't been logged yet, in the order the validation processor logs them.
+     */
+    private static final class Result {
+        private final List<ProcessingMessage> errors;
+        private final List<Result> children;
+        private final List<ProcessingMessage> childErrors;
+
+        /**
+         * The class constructor.
+         *
+         * @param errors      The errors of the keywords of the value itself, in keyword order.
+         * @param children    The errors of the members or elements of the value which have any, in the order they are
+         *                    validated in.
+         * @param childErrors The errors of the content of the value, found by the validation processor.
+         */
+        private Result(List<ProcessingMessage> errors, List<Result> children, List<ProcessingMessage> childErrors) {
+            this.errors = errors;
+            this.children = children;
+            this.childErrors = childErrors;
+        }
+
+        /**
+         * Splits the errors of a subtree found by the validation processor. Since the processor doesn't validate the
+         * content of a container which has errors itself, the errors are either all at the root of the subtree or
+         * all below it.
+         *
+         * @param report  The report of the subtree.
+         * @param pointer The pointer to the root of the subtree.
+         * @return The errors of the subtree.
+         */
+        private static Result ofSubtree(ProcessingReport report, String pointer) {
+            List<ProcessingMessage> errors = new ArrayList<>();
+            List<ProcessingMessage> childErrors = new ArrayList<>();
+            for (ProcessingMessage message : report) {
+                String messagePointer = message.asJson().path("instance").path("pointer").asText();
+                (messagePointer.equals(pointer) ? errors : childErrors).add(message);
+            }
+            return new Result(errors, Collections.<Result>emptyList(), childErrors);
+        }
+
+        /**
+         * Logs the errors to a report. Like the validation processor, the errors of the content of the value are
+         * skipped once the report has failed.
+         *
+         * @param report The report.
+         * @throws ProcessingException if the report doesn't accept errors.
+         */
+        private void log(ProcessingReport report) throws ProcessingException {
+            StreamingValidator.log(report, errors);
+            if (!report.isSuccess()) {
+                return;
+            }
+            for (Result child : children) {
+                child.log(report);
+            }
+            StreamingValidator.log(report, childErrors);
+        }
+    }
+
+    /**
+     * The path to a value of the document, only converted to a JSON pointer when it is needed.
+     */
+    private static final class Path {
+        private final Path parent;
+        private final String name;
+        private final int index;
+
+        private Path(Path parent, String name, int index) {
+            this.parent = parent;
+            this.name = name;
+            this.index = index;
+        }
+
+        private static JsonPointer toPointer(Path path) {
+            if (path == null) {
+                return JsonPointer.empty();
+            }
+            JsonPointer parent = toPointer(path.parent);
+            return path.name != null ? parent.append(path.name) : parent.append(path.index);
+        }
+    }
+}
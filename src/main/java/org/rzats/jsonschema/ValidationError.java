@@ -0,0 +1,54 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+
+/**
+ * The POJO class used to store a single validation error in REST API responses.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ValidationError {
+    private String pointer;
+    private String keyword;
+    private String message;
+
+    /**
+     * The class constructor.
+     *
+     * @param pointer The JSON pointer to the offending part of the document
+     * @param keyword The schema keyword which failed
+     * @param message The error message
+     */
+    public ValidationError(String pointer, String keyword, String message) {
+        this.pointer = pointer;
+        this.keyword = keyword;
+        this.message = message;
+    }
+
+    /**
+     * Converts a message of a validation report to an error.
+     *
+     * @param processingMessage The message.
+     * @return The converted error.
+     */
+    public static ValidationError fromMessage(ProcessingMessage processingMessage) {
+        JsonNode node = processingMessage.asJson();
+        JsonNode keyword = node.get("keyword");
+        return new ValidationError(node.path("instance").path("pointer").asText(),
+                keyword == null ? null : keyword.asText(),
+                processingMessage.getMessage());
+    }
+
+    public String getPointer() {
+        return pointer;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,118 @@
+package org.rzats.jsonschema;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs CPU-bound validations on a dedicated, fixed-size thread pool, keeping them off the request threads.
+ * <p>
+ * Validations wait in a bounded queue and are rejected straight away once it is full, instead of piling up. The
+ * number of validations queued or running for a single schema can be limited as well, so one busy schema can't take
+ * up the whole pool.
+ */
+@Service
+public class ValidationExecutor {
+    private final ConcurrentMap<String, Semaphore> schemaPermits = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final int perSchemaLimit;
+    private final long retryAfter;
+
+    /**
+     * The class constructor.
+     *
+     * @param threads        The number of worker threads, or 0 to use one per available processor.
+     * @param queueCapacity  The maximum number of validations waiting for a worker thread.
+     * @param perSchemaLimit The maximum number of validations queued or running for a single schema, or 0 for no limit.
+     * @param retryAfter     The number of seconds rejected clients are asked to wait before retrying.
+     */
+    @Autowired
+    public ValidationExecutor(@Value("${validation.executor.threads:0}") int threads,
+                              @Value("${validation.executor.queue-capacity:100}") int queueCapacity,
+                              @Value("${validation.executor.per-schema-limit:0}") int perSchemaLimit,
+                              @Value("${validation.executor.retry-after:1}") long retryAfter) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("validation-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.perSchemaLimit = perSchemaLimit;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Schedules a validation against the schema with the given identifier.
+     *
+     * @param id   The unique identifier of the JSON schema.
+     * @param task The validation.
+     * @param <T>  The type of the validation result.
+     * @return A future completed with the validation result.
+     * @throws RejectedExecutionException if the queue is full, or too many validations of the schema are in progress.
+     */
+    public <T> CompletableFuture<T> submit(String id, Supplier<T> task) {
+        Semaphore permits = perSchemaLimit > 0
+                ? schemaPermits.computeIfAbsent(id, key -> new Semaphore(perSchemaLimit))
+                : null;
+        if (permits != null && !permits.tryAcquire()) {
+            throw new RejectedExecutionException(String.format("Too many validations against schema %s in progress", id));
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw new RejectedExecutionException("Too many validations in progress", e);
+        }
+    }
+
+    /**
+     * @return The number of seconds rejected clients are asked to wait before retrying.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return The approximate number of validations currently running.
+     */
+    public int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of validations waiting for a worker thread.
+     */
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting validations. Called by Spring when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+package org.rzats.jsonschema;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the {@link ValidationExecutor} load on the actuator /metrics endpoint.
+ */
+@Component
+public class ValidationExecutorMetrics implements PublicMetrics {
+    private static final String PREFIX = "executor.validation.";
+
+    @Autowired
+    private ValidationExecutor validationExecutor;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "active", validationExecutor.activeCount()));
+        metrics.add(new Metric<>(PREFIX + "queue", validationExecutor.queueSize()));
+        return metrics;
+    }
+}
@@ -0,0 +1,46 @@
+package org.rzats.jsonschema;
+
+/**
+ * Controls how much work is spent on documents that don't conform to a schema.
+ */
+public enum ValidationMode {
+    /**
+     * Collect every error (or up to a maximum number of errors, if one is given).
+     */
+    FULL("full"),
+    /**
+     * Stop at the first error.
+     */
+    FAIL_FAST("failFast"),
+    /**
+     * Stop at the first error and only report whether the document is valid, without any error details.
+     */
+    BOOLEAN("boolean");
+
+    private final String name;
+
+    ValidationMode(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Converts a request parameter to a validation mode.
+     *
+     * @param name The name of the mode (full, failFast or boolean).
+     * @return The validation mode.
+     * @throws IllegalArgumentException if there is no mode with the given name.
+     */
+    public static ValidationMode fromString(String name) {
+        for (ValidationMode mode : values()) {
+            if (mode.name.equals(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown validation mode %s (use full, failFast or boolean)", name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
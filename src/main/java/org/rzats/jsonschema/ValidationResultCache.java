@@ -0,0 +1,137 @@
+package org.rzats.jsonschema;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+
+/**
+ * An optional, bounded cache of validation results, so documents which are sent again and again don't have to be
+ * parsed and validated each time.
+ * <p>
+ * Results are keyed by a 128-bit murmur3 hash of the document bytes, the schema identifier, the schema version of the
+ * {@link SchemaCache} and the validation options. Uploading a schema bumps its version (and the versions of the
+ * schemas referencing it), so results computed against a previous version are never served again, and are evicted
+ * like any other entry once the cache is full.
+ */
+@Service
+public class ValidationResultCache {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final boolean enabled;
+    private final Cache<Key, JsonValidatorResponse> cache;
+
+    /**
+     * The class constructor.
+     *
+     * @param enabled     If false, nothing is cached.
+     * @param maximumSize The maximum number of results kept in the cache.
+     */
+    @Autowired
+    public ValidationResultCache(@Value("${validation.result-cache.enabled:false}") boolean enabled,
+                                 @Value("${validation.result-cache.maximum-size:10000}") long maximumSize) {
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(enabled ? maximumSize : 0)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return true if results are cached.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the key of a validation result.
+     *
+     * @param id        The unique identifier of the JSON schema.
+     * @param version   The version of the schema, read before the compiled schema is fetched.
+     * @param document  The JSON document bytes.
+     * @param mode      The validation mode.
+     * @param maxErrors The number of errors after which validation stops in full mode.
+     * @return The key.
+     */
+    public Key key(String id, long version, byte[] document, ValidationMode mode, int maxErrors) {
+        return new Key(id, version, HASH_FUNCTION.hashBytes(document), document.length, mode, maxErrors);
+    }
+
+    /**
+     * @param key The key of the validation result.
+     * @return The cached validation result, or null if it isn't cached.
+     */
+    public JsonValidatorResponse get(Key key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Caches a validation result.
+     *
+     * @param key      The key of the validation result.
+     * @param response The validation result.
+     */
+    public void put(Key key, JsonValidatorResponse response) {
+        if (enabled) {
+            cache.put(key, response);
+        }
+    }
+
+    /**
+     * @return The hit/miss/eviction statistics of the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return The number of results currently in the cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * The key of a cached validation result.
+     */
+    public static final class Key {
+        private final String id;
+        private final long version;
+        private final HashCode hash;
+        private final int length;
+        private final ValidationMode mode;
+        private final int maxErrors;
+
+        private Key(String id, long version, HashCode hash, int length, ValidationMode mode, int maxErrors) {
+            this.id = id;
+            this.version = version;
+            this.hash = hash;
+            this.length = length;
+            this.mode = mode;
+            this.maxErrors = maxErrors;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return version == that.version && length == that.length && maxErrors == that.maxErrors
+                    && mode == that.mode && hash.equals(that.hash) && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, version, hash.asInt(), mode, maxErrors);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.rzats.jsonschema;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latency histograms and error counters for the hot paths of the service.
+ * <p>
+ * Metrics are kept in the Dropwizard {@link MetricRegistry}, which Spring Boot publishes on the actuator /metrics
+ * endpoint. Latencies are recorded in microseconds into histograms, which are reported with their count, mean, median,
+ * 99th and 99.9th percentiles (Dropwizard timers would be reported in whole milliseconds). The histograms keep every
+ * latency of the last one to two minutes (see {@link LatencyReservoir}) rather than a sample of them, so their tail
+ * percentiles are meaningful. Names are built as follows:
+ * <ul>
+ * <li>{@code histogram.<action>.<schema id>.<outcome>} - the latency of a whole request, per schema and outcome</li>
+ * <li>{@code histogram.<action>.<outcome>} - the latency of a whole request against a schema which doesn't exist (or
+ * wasn't looked up), so clients can't create metrics at will</li>
+ * <li>{@code histogram.<action>.stage.<stage>} - the latency of a single stage of a request</li>
+ * <li>{@code histogram.database.<operation>} - the latency of a {@link org.rzats.jsonschema.database.DatabaseProvider} call</li>
+ * <li>{@code histogram.regex.<schema id>} - the time a document spent matching the regular expressions of a schema</li>
+ * <li>{@code counter.<action>.error.<kind>} - the number of errors of a kind</li>
+ * </ul>
+ */
+@Component
+public class ValidatorMetrics {
+    private static final long RESERVOIR_WINDOW_MINUTES = 1;
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Autowired
+    private MetricRegistry registry;
+
+    /**
+     * Schema identifiers become a single segment of a metric name, so the separator is replaced.
+     *
+     * @param id The unique identifier of a JSON schema.
+     * @return The metric name segment.
+     */
+    private static String segment(String id) {
+        return id.replace('.', '_');
+    }
+
+    /**
+     * Returns a latency histogram, registering it on first use.
+     *
+     * @param name  The first segment of the histogram name.
+     * @param names The other segments of the histogram name (null segments are left out).
+     * @return The histogram.
+     */
+    private Histogram histogram(String name, String... names) {
+        return histograms.computeIfAbsent(MetricRegistry.name(name, names), key -> {
+            try {
+                return registry.register(key, new Histogram(
+                        new LatencyReservoir(RESERVOIR_WINDOW_MINUTES, TimeUnit.MINUTES)));
+            } catch (IllegalArgumentException e) {
+                // Registered by someone else
+                return registry.histogram(key);
+            }
+        });
+    }
+
+    /**
+     * Records the time elapsed since a start time in a latency histogram.
+     *
+     * @param histogram The latency histogram.
+     * @param startTime The {@link System#nanoTime()} at which the measurement started.
+     */
+    private static void record(Histogram histogram, long startTime) {
+        histogram.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Starts timing a stage of a request. The returned sample should be closed when the stage ends.
+     *
+     * @param action A short name for the action (validateDocument, uploadSchema etc.)
+     * @param stage  A short name for the stage (parse, validate etc.)
+     * @return The running sample.
+     */
+    public Sample stage(String action, String stage) {
+        return new Sample(histogram("histogram", action, "stage", stage));
+    }
+
+    /**
+     * Starts timing a database operation. The returned sample should be closed when the operation ends.
+     *
+     * @param operation A short name for the operation (get, put etc.)
+     * @return The running sample.
+     */
+    public Sample database(String operation) {
+        return new Sample(histogram("histogram", "database", operation));
+    }
+
+    /**
+     * Records the latency of a whole request.
+     *
+     * @param action    A short name for the action (validateDocument, uploadSchema etc.)
+     * @param id        The unique identifier of the JSON schema, or null if the schema doesn't exist (or wasn't
+     *                  looked up).
+     * @param outcome   The status of the request - "success" or "error".
+     * @param startTime The {@link System#nanoTime()} at which the request started.
+     */
+    public void request(String action, String id, String outcome, long startTime) {
+        record(histogram("histogram", action, id == null ? null : segment(id), outcome), startTime);
+    }
+
+    /**
+     * Records the time a document spent matching the regular expressions of a schema, and counts the documents which
+     * spent their whole budget (as {@code counter.regex.error.timeout}).
+     *
+     * @param id     The unique identifier of the JSON schema - an existing one, since it has been compiled.
+     * @param budget The closed budget of the document.
+     */
+    public void regex(String id, RegexBudget budget) {
+        histogram("histogram", "regex", segment(id))
+                .update(TimeUnit.NANOSECONDS.toMicros(budget.getSpentNanos()));
+        if (budget.isExhausted()) {
+            error("regex", "timeout");
+        }
+    }
+
+    /**
+     * Counts an error.
+     *
+     * @param action A short name for the action (validateDocument, uploadSchema etc.)
+     * @param kind   A short name for the kind of error (database, json, schema etc.)
+     */
+    public void error(String action, String kind) {
+        registry.counter(MetricRegistry.name("counter", action, "error", kind)).inc();
+    }
+
+    /**
+     * A running latency measurement, recorded when it is closed.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final Histogram histogram;
+        private final long startTime = System.nanoTime();
+
+        private Sample(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            record(histogram, startTime);
+        }
+    }
+}
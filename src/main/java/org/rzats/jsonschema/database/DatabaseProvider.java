@@ -1,7 +1,13 @@
 package org.rzats.jsonschema.database;
 
+import java.util.List;
+
 /**
  * An interface acting as a wrapper for key-value databases.
+ * <p>
+ * Every write is also recorded in a change log: each key written by {@link #put} or {@link #writeBatch} gets the
+ * next sequence number, in the order the writes become visible, so readers can catch up on the changes made since
+ * a given sequence number with {@link #scanChanges}.
  */
 public interface DatabaseProvider {
     /**
@@ -22,4 +28,90 @@ public interface DatabaseProvider {
      * @throws DatabaseProviderException if a database error occurs.
      */
     void put(byte[] key, byte[] value) throws DatabaseProviderException;
+
+    /**
+     * Sets the database's entry for the specified key to the value, without recording a change. Only meant for
+     * writes which don't change what the entry holds, such as storing it in another format.
+     *
+     * @param key   The key, as a byte array.
+     * @param value The value, as a byte array.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    void rewrite(byte[] key, byte[] value) throws DatabaseProviderException;
+
+    /**
+     * Returns the values associated with several keys in a single operation.
+     *
+     * @param keys The keys, as byte arrays.
+     * @return The values, in the same order as the keys, with null for keys which don't exist.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    List<byte[]> multiGet(List<byte[]> keys) throws DatabaseProviderException;
+
+    /**
+     * Sets the database's entries for several keys atomically - either all of them are written, or none are.
+     *
+     * @param keys   The keys, as byte arrays.
+     * @param values The values, as byte arrays, in the same order as the keys.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    void writeBatch(List<byte[]> keys, List<byte[]> values) throws DatabaseProviderException;
+
+    /**
+     * Visits the entries of the database one by one, in key order if the database keeps its keys ordered.
+     * Entries written while the scan is running may or may not be visited.
+     *
+     * @param visitor The visitor called for each entry, which can stop the scan early.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    void scan(EntryVisitor visitor) throws DatabaseProviderException;
+
+    /**
+     * Returns the sequence number of the latest change.
+     *
+     * @return The sequence number, or 0 if nothing has been written yet.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    long latestSequence() throws DatabaseProviderException;
+
+    /**
+     * Visits the changes made after a given sequence number, in sequence order. Changes made while the scan is
+     * running may or may not be visited.
+     *
+     * @param since   The sequence number of the last change already known to the caller, or 0 to visit every change.
+     * @param visitor The visitor called for each change, which can stop the scan early.
+     * @return true if the changes were visited, false if some of the changes after the given sequence number are no
+     * longer available (or the sequence number is newer than the latest change), so the caller can't catch up
+     * incrementally.
+     * @throws DatabaseProviderException if a database error occurs.
+     */
+    boolean scanChanges(long since, ChangeVisitor visitor) throws DatabaseProviderException;
+
+    /**
+     * A callback receiving the entries of a {@link #scan}.
+     */
+    interface EntryVisitor {
+        /**
+         * Visits a single entry.
+         *
+         * @param key   The key, as a byte array.
+         * @param value The value, as a byte array.
+         * @return true to continue the scan, false to stop it.
+         */
+        boolean visit(byte[] key, byte[] value);
+    }
+
+    /**
+     * A callback receiving the changes of a {@link #scanChanges}.
+     */
+    interface ChangeVisitor {
+        /**
+         * Visits a single change.
+         *
+         * @param sequence The sequence number of the change.
+         * @param key      The key which was written, as a byte array.
+         * @return true to continue the scan, false to stop it.
+         */
+        boolean visit(long sequence, byte[] key);
+    }
 }
@@ -1,56 +1,392 @@
 package org.rzats.jsonschema.database;
 
-import org.rocksdb.Options;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * An implementation of {@link DatabaseProvider} using an underlying RocksDB key-value database.
+ * <p>
+ * A single connection handle is opened when the bean is initialized and shared by all requests until the bean
+ * is destroyed. Operations hold a read lock on the handle, so the handle can't be closed while they are running.
+ * <p>
+ * Entries are kept in their own column family, whose blocks are compressed with the rocksdb.compression algorithm.
+ * Entries written to the default column family by earlier versions are moved into it when the database is opened.
+ * <p>
+ * The change log is kept in another column family, keyed by big-endian sequence numbers and holding the written keys.
+ * Log records are written in the same batch as the entries, and writes are serialized so sequence numbers become
+ * visible in order. Only the latest rocksdb.change-log-retention records are kept.
  */
 @Service
 public class RocksDbProvider implements DatabaseProvider {
-    private static final String DATABASE_PATH = "/rocksdb";
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    private static final byte[] COLUMN_FAMILY = "schemas".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CHANGES_COLUMN_FAMILY = "changes".getBytes(StandardCharsets.UTF_8);
+
+    private final ReadWriteLock handleLock = new ReentrantReadWriteLock();
+    private final Lock writeLock = new ReentrantLock();
+
+    @Value("${rocksdb.path:rocksdb}")
+    private String databasePath;
+
+    @Value("${rocksdb.block-cache-size:67108864}")
+    private long blockCacheSize;
+
+    @Value("${rocksdb.bloom-filter-bits:10}")
+    private int bloomFilterBits;
+
+    @Value("${rocksdb.write-buffer-size:16777216}")
+    private long writeBufferSize;
+
+    @Value("${rocksdb.max-write-buffer-number:3}")
+    private int maxWriteBufferNumber;
+
+    @Value("${rocksdb.compaction-style:LEVEL}")
+    private CompactionStyle compactionStyle;
+
+    @Value("${rocksdb.max-background-compactions:2}")
+    private int maxBackgroundCompactions;
+
+    @Value("${rocksdb.compression:LZ4_COMPRESSION}")
+    private CompressionType compressionType;
+
+    @Value("${rocksdb.change-log-retention:100000}")
+    private long changeLogRetention;
+
+    private BloomFilter bloomFilter;
+    private DBOptions options;
+    private ColumnFamilyOptions columnFamilyOptions;
+    private List<ColumnFamilyHandle> columnFamilies;
+    private ColumnFamilyHandle schemas;
+    private ColumnFamilyHandle changes;
+    private volatile long sequence;
+    private RocksDB connection;
+
+    /**
+     * Factory method for the RocksDB DBOptions object, tuned from the rocksdb.* configuration properties.
+     * Being a C++ object, the options should be disposed using DBOptions.close() once the database is closed.
+     *
+     * @return The DBOptions object.
+     */
+    private DBOptions createDatabaseOptions() {
+        return new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setMaxBackgroundCompactions(maxBackgroundCompactions);
+    }
+
+    /**
+     * Factory method for the RocksDB ColumnFamilyOptions object, tuned from the rocksdb.* configuration properties.
+     * Being C++ objects, the options and the bloom filter should be disposed using close() once the database is closed.
+     *
+     * @return The ColumnFamilyOptions object.
+     */
+    private ColumnFamilyOptions createColumnFamilyOptions() {
+        bloomFilter = new BloomFilter(bloomFilterBits, false);
+
+        BlockBasedTableConfig tableConfig = new BlockBasedTableConfig()
+                .setBlockCacheSize(blockCacheSize)
+                .setFilter(bloomFilter)
+                .setCacheIndexAndFilterBlocks(true)
+                .setPinL0FilterAndIndexBlocksInCache(true);
+
+        return new ColumnFamilyOptions()
+                .setTableFormatConfig(tableConfig)
+                .setWriteBufferSize(writeBufferSize)
+                .setMaxWriteBufferNumber(maxWriteBufferNumber)
+                .setCompactionStyle(compactionStyle)
+                .setLevelCompactionDynamicLevelBytes(compactionStyle == CompactionStyle.LEVEL)
+                .setCompressionType(compressionType);
+    }
 
     /**
-     * Factory method for the RocksDB Options object.
-     * Being a C++ object, the options should be disposed using a try-with-resources block (or Options.close()).
+     * Opens the shared RocksDB connection handle. Called by Spring once the configuration has been injected.
      *
-     * @return The Options object.
+     * @throws DatabaseProviderException if a database connection could not be established.
      */
-    private Options createDatabaseOptions() {
-        return new Options().setCreateIfMissing(true);
+    @PostConstruct
+    public void open() throws DatabaseProviderException {
+        options = createDatabaseOptions();
+        columnFamilyOptions = createColumnFamilyOptions();
+        columnFamilies = new ArrayList<>();
+        try {
+            Path path = Files.createDirectories(Paths.get(databasePath).toAbsolutePath());
+            connection = RocksDB.open(options, path.toString(), Arrays.asList(
+                    new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions),
+                    new ColumnFamilyDescriptor(COLUMN_FAMILY, columnFamilyOptions),
+                    new ColumnFamilyDescriptor(CHANGES_COLUMN_FAMILY, columnFamilyOptions)), columnFamilies);
+            schemas = columnFamilies.get(1);
+            changes = columnFamilies.get(2);
+            migrateDefaultColumnFamily();
+            try (RocksIterator iterator = connection.newIterator(changes)) {
+                iterator.seekToLast();
+                sequence = iterator.isValid() ? sequence(iterator.key()) : 0;
+                iterator.status();
+            }
+        } catch (IOException | RocksDBException e) {
+            closeHandles();
+            throw new DatabaseProviderException(e);
+        }
     }
 
     /**
-     * Factory method for the RocksDB connection handle.
-     * Being a C++ object, the handle should be disposed using a try-with-resources block (or RocksDB.close()).
+     * Moves the entries written to the default column family by earlier versions into the schemas column family,
+     * in a single atomic batch. Entries already in the schemas column family are kept.
      *
-     * @param databaseOptions The RocksDB Options object. Create an instance of this using {@link #createDatabaseOptions}.
-     * @return The RocksDB connection handle.
-     * @throws RocksDBException if a database connection could not be established.
+     * @throws RocksDBException if the entries can't be moved.
+     */
+    private void migrateDefaultColumnFamily() throws RocksDBException {
+        ColumnFamilyHandle defaultColumnFamily = columnFamilies.get(0);
+        try (RocksIterator iterator = connection.newIterator(defaultColumnFamily);
+             WriteBatch batch = new WriteBatch();
+             WriteOptions writeOptions = new WriteOptions()) {
+            int count = 0;
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (connection.get(schemas, key) == null) {
+                    batch.put(schemas, key, iterator.value());
+                }
+                batch.remove(defaultColumnFamily, key);
+                count++;
+            }
+            iterator.status();
+            if (count > 0) {
+                connection.write(writeOptions, batch);
+            }
+        }
+    }
+
+    /**
+     * @param sequence A sequence number of the change log.
+     * @return The key of the sequence number in the change log column family.
+     */
+    private static byte[] sequenceKey(long sequence) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(sequence).array();
+    }
+
+    /**
+     * @param key A key of the change log column family.
+     * @return The sequence number.
      */
-    private RocksDB createDatabaseConnection(Options databaseOptions) throws RocksDBException {
-        return RocksDB.open(databaseOptions, Paths.get("").toAbsolutePath().toString() + DATABASE_PATH);
+    private static long sequence(byte[] key) {
+        return ByteBuffer.wrap(key).getLong();
+    }
+
+    /**
+     * Disposes of the connection handle and the C++ objects it uses, in reverse order of creation.
+     */
+    private void closeHandles() {
+        for (ColumnFamilyHandle columnFamily : columnFamilies) {
+            columnFamily.close();
+        }
+        columnFamilies = Collections.emptyList();
+        schemas = null;
+        changes = null;
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+        columnFamilyOptions.close();
+        options.close();
+        bloomFilter.close();
+    }
+
+    /**
+     * Closes the shared RocksDB connection handle, waiting for running operations to finish.
+     * Called by Spring when the application shuts down.
+     */
+    @PreDestroy
+    public void close() {
+        Lock lock = handleLock.writeLock();
+        lock.lock();
+        try {
+            if (connection != null) {
+                closeHandles();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires the read lock on the connection handle, ensuring it stays open until the lock is released.
+     *
+     * @return The acquired lock.
+     * @throws DatabaseProviderException if the connection has already been closed.
+     */
+    private Lock lockConnection() throws DatabaseProviderException {
+        Lock lock = handleLock.readLock();
+        lock.lock();
+        if (connection == null) {
+            lock.unlock();
+            throw new DatabaseProviderException("Database connection is closed");
+        }
+        return lock;
     }
 
     @Override
     public byte[] get(byte[] key) throws DatabaseProviderException {
-        try (Options options = createDatabaseOptions(); RocksDB connection = createDatabaseConnection(options)) {
-            return connection.get(key);
+        Lock lock = lockConnection();
+        try {
+            return connection.get(schemas, key);
         } catch (RocksDBException e) {
             throw new DatabaseProviderException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public void put(byte[] key, byte[] value) throws DatabaseProviderException {
-        try (Options options = createDatabaseOptions(); RocksDB connection = createDatabaseConnection(options)) {
-            connection.put(key, value);
+        writeBatch(Collections.singletonList(key), Collections.singletonList(value));
+    }
+
+    @Override
+    public void rewrite(byte[] key, byte[] value) throws DatabaseProviderException {
+        Lock lock = lockConnection();
+        writeLock.lock();
+        try {
+            connection.put(schemas, key, value);
+        } catch (RocksDBException e) {
+            throw new DatabaseProviderException(e);
+        } finally {
+            writeLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) throws DatabaseProviderException {
+        Lock lock = lockConnection();
+        try {
+            // The returned map is keyed by the identity of the key arrays
+            Map<byte[], byte[]> values = connection.multiGet(Collections.nCopies(keys.size(), schemas), keys);
+            List<byte[]> result = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                result.add(values.get(key));
+            }
+            return result;
+        } catch (RocksDBException e) {
+            throw new DatabaseProviderException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void writeBatch(List<byte[]> keys, List<byte[]> values) throws DatabaseProviderException {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("Every key needs exactly one value");
+        }
+
+        Lock lock = lockConnection();
+        writeLock.lock();
+        try (WriteBatch batch = new WriteBatch();
+             WriteOptions writeOptions = new WriteOptions()) {
+            long next = sequence;
+            for (int i = 0; i < keys.size(); i++) {
+                batch.put(schemas, keys.get(i), values.get(i));
+                batch.put(changes, sequenceKey(++next), keys.get(i));
+                if (changeLogRetention > 0 && next > changeLogRetention) {
+                    batch.remove(changes, sequenceKey(next - changeLogRetention));
+                }
+            }
+            connection.write(writeOptions, batch);
+            sequence = next;
+        } catch (RocksDBException e) {
+            throw new DatabaseProviderException(e);
+        } finally {
+            writeLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void scan(EntryVisitor visitor) throws DatabaseProviderException {
+        Lock lock = lockConnection();
+        try (RocksIterator iterator = connection.newIterator(schemas)) {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                if (!visitor.visit(iterator.key(), iterator.value())) {
+                    return;
+                }
+            }
+            iterator.status();
+        } catch (RocksDBException e) {
+            throw new DatabaseProviderException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long latestSequence() throws DatabaseProviderException {
+        Lock lock = lockConnection();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean scanChanges(long since, ChangeVisitor visitor) throws DatabaseProviderException {
+        Lock lock = lockConnection();
+        try (RocksIterator iterator = connection.newIterator(changes)) {
+            long latest = sequence;
+            if (since > latest) {
+                return false;
+            }
+
+            iterator.seek(sequenceKey(since + 1));
+            if (since < latest && (!iterator.isValid() || sequence(iterator.key()) != since + 1)) {
+                // The change right after the given one has been discarded
+                iterator.status();
+                return false;
+            }
+            for (; iterator.isValid(); iterator.next()) {
+                if (!visitor.visit(sequence(iterator.key()), iterator.value())) {
+                    return true;
+                }
+            }
+            iterator.status();
+            return true;
         } catch (RocksDBException e) {
             throw new DatabaseProviderException(e);
+        } finally {
+            lock.unlock();
         }
     }
 }
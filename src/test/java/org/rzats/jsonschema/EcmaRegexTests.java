@@ -0,0 +1,130 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.load.SchemaLoader;
+import com.github.fge.jsonschema.core.util.RhinoHelper;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EcmaRegexTests {
+    private static final List<String> PATTERNS = Arrays.asList(
+            "", "^abc$", "a.c", "^.$", "c$", "\\d+", "\\w\\s\\w", "[^a-c]", "[\\w-]", "(?:ab)+", "a(?=b)", "a(?!b)",
+            "\\bfoo\\b", "^\\u00e9", "x{2,3}", "[.$]", "\\$", "a|b$", "^[^]$", "\\S+$", "^..$", "[\\s]", "[^\\s]",
+            "[a\\S]", "\\Bo", "x\\B", "^[\\u0100-\\uffff]+$", "^[\\ud800-\\udbff]", "\\s\\S");
+    private static final List<String> STRINGS = Arrays.asList(
+            "", "abc", "abc\n", "a\nc", "a\u2028c", "a\u0085c", "\u00e9", "\ud83d\ude00", "foo bar", "\u00e9foo",
+            "x-y", "xxx", "$", "ab", "ac", "a b", "a\u00a0b", "\u3000", "\ufeff", "a\ud83d\ude00b", "\ud83d", "\u00e9\u00e9");
+
+    private static CompiledSchema compile(String schema, long specializationThreshold, List<RegexBudget> budgets)
+            throws Exception {
+        JsonSchemaFactory factory = JsonSchemaFactory.newBuilder()
+                .setValidationConfiguration(RegexKeywords.validationConfiguration())
+                .freeze();
+        JsonNode schemaNode = RegexKeywords.withDefaultLibrary(JsonLoader.fromString(schema));
+        return new CompiledSchema(factory.getProcessor(), new SchemaLoader().load(schemaNode), specializationThreshold,
+                50, budgets::add);
+    }
+
+    @Test
+    public void testAgreesWithRhino() {
+        for (String pattern : PATTERNS) {
+            EcmaRegex regex = new EcmaRegex(pattern);
+            for (String value : STRINGS) {
+                assertEquals(pattern + " " + value, RhinoHelper.regMatch(pattern, value), regex.find(value));
+            }
+        }
+        assertTrue(new EcmaRegex("^a.c$").isTranslated());
+        assertFalse(new EcmaRegex("(a)\\1").isTranslated());
+        assertTrue(new EcmaRegex("^[\\u0100-\\uffff]+$").isBounded());
+        assertFalse(new EcmaRegex("^[\\ud800-\\udbff]").isBounded());
+        assertFalse(new EcmaRegex("(a)\\1").isBounded());
+    }
+
+    @Test
+    public void testClassEscapesAgreeWithRhino() {
+        List<EcmaRegex> regexes = Arrays.asList(new EcmaRegex("\\s"), new EcmaRegex("[^\\s]"), new EcmaRegex("x\\b"));
+        for (char c = 0; c < Character.MIN_SURROGATE; c++) {
+            for (EcmaRegex regex : regexes) {
+                String value = "x" + c;
+                assertEquals(regex + " " + (int) c, RhinoHelper.regMatch(regex.getSource(), value), regex.find(value));
+            }
+        }
+    }
+
+    @Test
+    public void testKeywordsReportLikeValidationProcessor() throws Exception {
+        String schema = "{\"properties\": {\"a\": {\"pattern\": \"^x+$\"}}, \"patternProperties\": {\"^p\": {}},"
+                + " \"additionalProperties\": false}";
+        CompiledSchema expected = new CompiledSchema(JsonSchemaFactory.byDefault().getProcessor(),
+                new SchemaLoader().load(JsonLoader.fromString(schema)));
+        CompiledSchema actual = compile(schema, 0, new ArrayList<>());
+        for (String document : Arrays.asList("{\"a\": \"xx\", \"pa\": 1}", "{\"a\": \"xy\", \"c\": 1, \"b\": 2}")) {
+            JsonNode node = JsonLoader.fromString(document);
+            assertEquals(expected.validate(node).toString(), actual.validate(node).toString());
+        }
+    }
+
+    @Test
+    public void testTimeLimit() throws Exception {
+        StringBuilder document = new StringBuilder("\"");
+        for (int i = 0; i < 40; i++) {
+            document.append('a');
+        }
+        JsonNode node = JsonLoader.fromString(document.append("!\"").toString());
+
+        // Specialized or not, with or without a draft v4 $schema
+        for (String schemaText : Arrays.asList("{\"pattern\": \"^(a+)+$\"}",
+                "{\"$schema\": \"http://json-schema.org/draft-04/schema#\", \"pattern\": \"^(a+)+$\"}")) {
+            for (long specializationThreshold : new long[]{0, 1}) {
+                List<RegexBudget> budgets = new ArrayList<>();
+                CompiledSchema schema = compile(schemaText, specializationThreshold, budgets);
+                long startTime = System.nanoTime();
+                try {
+                    schema.validate(node);
+                    fail(schemaText);
+                } catch (ProcessingException e) {
+                    assertEquals("regular expressions took longer than 50 ms", e.getProcessingMessage().getMessage());
+                }
+                assertTrue(System.nanoTime() - startTime < 5_000_000_000L);
+                assertEquals(1, budgets.size());
+                assertTrue(budgets.get(0).isExhausted());
+
+                // Short strings are matched within the budget, and their time is recorded
+                assertTrue(schema.validate(JsonLoader.fromString("\"aaa\"")).isSuccess());
+                assertEquals(2, budgets.size());
+                assertFalse(budgets.get(1).isExhausted());
+                assertTrue(budgets.get(1).getSpentNanos() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testTimeLimitWithSurrogates() throws Exception {
+        StringBuilder document = new StringBuilder("\"");
+        for (int i = 0; i < 34; i++) {
+            document.append('a');
+        }
+        JsonNode node = JsonLoader.fromString(document.append("\ud83d\ude00\"").toString());
+
+        CompiledSchema schema = compile("{\"pattern\": \"^(a|aa)+$\"}", 0, new ArrayList<>());
+        long startTime = System.nanoTime();
+        try {
+            schema.validate(node);
+            fail();
+        } catch (ProcessingException e) {
+            assertEquals("regular expressions took longer than 50 ms", e.getProcessingMessage().getMessage());
+        }
+        assertTrue(System.nanoTime() - startTime < 1_000_000_000L);
+    }
+}
@@ -6,29 +6,82 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
+import org.rzats.jsonschema.database.DatabaseProvider;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = {"rocksdb.path=build/rocksdb-test", "validation.result-cache.enabled=true",
+        "request.decoding.max-size=1048576"})
 @AutoConfigureMockMvc
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class JsonValidatorControllerTests {
     @Autowired
     private MockMvc mvc;
 
+    @Autowired
+    private DatabaseProvider databaseProvider;
+
+    @Autowired
+    private SchemaCache schemaCache;
+
+    @Autowired
+    private SchemaWarmUp schemaWarmUp;
+
+    @Autowired
+    private ValidationResultCache resultCache;
+
     private String readResource(String fileName) throws Exception {
         return Resources.toString(Resources.getResource(fileName), Charsets.UTF_8);
     }
 
+    private static byte[] encode(String content, boolean gzip) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = gzip ? new GZIPOutputStream(encoded) : new DeflaterOutputStream(encoded)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return encoded.toByteArray();
+    }
+
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult result = this.mvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return this.mvc.perform(asyncDispatch(result));
+    }
+
     @Test
     public void testAUploadSchema() throws Exception {
         String badSchema = readResource("badSchema.json");
@@ -78,13 +131,513 @@ public class JsonValidatorControllerTests {
                 .toJsonString();
         String invalidDocumentError = new JsonValidatorResponse("validateDocument", "goodSchema", "error", null).toJsonString();
 
-        this.mvc.perform(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+        performAsync(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
                 .andExpect(content().json(validDocumentSuccess));
 
-        this.mvc.perform(post("/validate/nonexistentSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+        performAsync(post("/validate/nonexistentSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
                 .andExpect(content().json(validDocumentError));
 
-        this.mvc.perform(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(invalidDocument))
+        performAsync(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(invalidDocument))
                 .andExpect(content().json(invalidDocumentError));
     }
+
+    @Test
+    public void testDSchemaCacheInvalidation() throws Exception {
+        String validDocument = readResource("invalidDocument.json");
+        String stringSchema = "{\"type\": \"string\"}";
+
+        String cachedSchemaSuccess = new JsonValidatorResponse("validateDocument", "cachedSchema", "success", null).toJsonString();
+        String cachedSchemaError = new JsonValidatorResponse("validateDocument", "cachedSchema", "error", null).toJsonString();
+
+        this.mvc.perform(post("/schema/cachedSchema").contentType(MediaType.APPLICATION_JSON).content(readResource("goodSchema.json")));
+
+        performAsync(post("/validate/cachedSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(content().json(cachedSchemaSuccess));
+
+        this.mvc.perform(post("/schema/cachedSchema?override=1").contentType(MediaType.APPLICATION_JSON).content(stringSchema));
+
+        performAsync(post("/validate/cachedSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(content().json(cachedSchemaError));
+
+        this.mvc.perform(get("/metrics"))
+                .andExpect(jsonPath("$['cache.schema.hit']").exists())
+                .andExpect(jsonPath("$['cache.schema.miss']").exists())
+                .andExpect(jsonPath("$['cache.schema.eviction']").exists());
+    }
+
+    @Test
+    public void testEValidateBatch() throws Exception {
+        String validDocument = "{\"source\": \"a\", \"destination\": \"b\"}";
+        String invalidDocument = "{\"destination\": \"b\"}";
+
+        String ndjsonResults = this.mvc.perform(post("/validate/goodSchema/batch").contentType("application/x-ndjson")
+                .content(validDocument + "\n" + invalidDocument + "\n" + validDocument + "\n"))
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjsonResults.split("\n");
+        assertEquals(3, lines.length);
+        JSONAssert.assertEquals("{\"action\": \"validateBatch\", \"id\": \"goodSchema\", \"index\": 0, \"status\": \"success\"}", lines[0], false);
+        JSONAssert.assertEquals("{\"index\": 1, \"status\": \"error\"}", lines[1], false);
+        JSONAssert.assertEquals("{\"index\": 2, \"status\": \"success\"}", lines[2], false);
+
+        String arrayResults = this.mvc.perform(post("/validate/goodSchema/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[" + invalidDocument + ", " + validDocument + "]"))
+                .andReturn().getResponse().getContentAsString();
+
+        lines = arrayResults.split("\n");
+        assertEquals(2, lines.length);
+        JSONAssert.assertEquals("{\"index\": 0, \"status\": \"error\"}", lines[0], false);
+        JSONAssert.assertEquals("{\"index\": 1, \"status\": \"success\"}", lines[1], false);
+
+        String malformedResults = this.mvc.perform(post("/validate/goodSchema/batch").contentType("application/x-ndjson")
+                .content(validDocument + "\n{\"source\" \"a\"}\n" + validDocument))
+                .andReturn().getResponse().getContentAsString();
+
+        lines = malformedResults.split("\n");
+        assertEquals(2, lines.length);
+        JSONAssert.assertEquals("{\"index\": 1, \"status\": \"error\"}", lines[1], false);
+        this.mvc.perform(get("/metrics"))
+                .andExpect(jsonPath("$['histogram.validateBatch.goodSchema.error.count']").value(3))
+                .andExpect(jsonPath("$['histogram.validateBatch.stage.validate.count']").value(6))
+                .andExpect(jsonPath("$['counter.validateBatch.error.json']").value(1));
+    }
+
+    @Test
+    public void testFUnicodeSchema() throws Exception {
+        String unicodeSchema = "{\"description\": \"Sch\u00e9ma f\u00fcr \u041f\u0440\u0438\u0432\u0435\u0442 \u65e5\u672c\", \"enum\": [\"\u043a\u043b\u044e\u0447\"]}";
+
+        this.mvc.perform(post("/schema/unicodeSchema").contentType(MediaType.APPLICATION_JSON)
+                .content(unicodeSchema.getBytes(StandardCharsets.UTF_8)))
+                .andExpect(content().json(new JsonValidatorResponse("uploadSchema", "unicodeSchema", "success", null).toJsonString()));
+
+        byte[] downloaded = this.mvc.perform(get("/schema/unicodeSchema"))
+                .andReturn().getResponse().getContentAsByteArray();
+        JSONAssert.assertEquals(unicodeSchema, new String(downloaded, StandardCharsets.UTF_8), true);
+
+        performAsync(post("/validate/unicodeSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("\"\u043a\u043b\u044e\u0447\"".getBytes(StandardCharsets.UTF_8)))
+                .andExpect(content().json(new JsonValidatorResponse("validateDocument", "unicodeSchema", "success", null).toJsonString()));
+    }
+
+    @Test
+    public void testGLegacySchemaMigration() throws Exception {
+        String goodSchema = readResource("goodSchema.json");
+        byte[] key = "legacySchema".getBytes(StandardCharsets.UTF_8);
+
+        // Schemas used to be stored as pretty-printed JSON text
+        databaseProvider.put(key, goodSchema.getBytes(StandardCharsets.UTF_8));
+        long sequence = databaseProvider.latestSequence();
+
+        String prettySchema = this.mvc.perform(get("/schema/legacySchema?pretty=1"))
+                .andExpect(content().json(goodSchema))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(prettySchema.contains("\n"));
+
+        // The first read rewrites the entry in the binary format, at version 0
+        assertEquals(0, databaseProvider.get(key)[0]);
+        // Followers aren't notified, since the schema hasn't changed
+        assertEquals(sequence, databaseProvider.latestSequence());
+        this.mvc.perform(get("/schema/legacySchema"))
+                .andExpect(header().string("ETag", startsWith("\"0-")));
+
+        String compactSchema = this.mvc.perform(get("/schema/legacySchema"))
+                .andExpect(content().json(goodSchema))
+                .andReturn().getResponse().getContentAsString();
+        assertFalse(compactSchema.contains("\n"));
+
+        performAsync(post("/validate/legacySchema").contentType(MediaType.APPLICATION_JSON).content(readResource("invalidDocument.json")))
+                .andExpect(content().json(new JsonValidatorResponse("validateDocument", "legacySchema", "success", null).toJsonString()));
+    }
+
+    @Test
+    public void testHMetrics() throws Exception {
+        performAsync(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(readResource("invalidDocument.json")));
+        performAsync(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(readResource("validDocument.json")));
+        // Schemas which don't exist share their metrics
+        performAsync(post("/validate/missingSchema").contentType(MediaType.APPLICATION_JSON).content(readResource("validDocument.json")));
+        this.mvc.perform(get("/schema/missingSchema"));
+
+        this.mvc.perform(get("/metrics"))
+                .andExpect(jsonPath("$['histogram.validateDocument.missingSchema.error.count']").doesNotExist())
+                .andExpect(jsonPath("$['histogram.downloadSchema.missingSchema.error.count']").doesNotExist())
+                .andExpect(jsonPath("$['histogram.validateDocument.error.count']").exists())
+                .andExpect(jsonPath("$['histogram.downloadSchema.error.count']").exists())
+                .andExpect(jsonPath("$['histogram.validateDocument.goodSchema.success.snapshot.99thPercentile']").exists())
+                .andExpect(jsonPath("$['histogram.validateDocument.goodSchema.error.snapshot.999thPercentile']").exists())
+                .andExpect(jsonPath("$['histogram.validateDocument.stage.validate.snapshot.median']").exists())
+                .andExpect(jsonPath("$['histogram.database.get.count']").exists())
+                .andExpect(jsonPath("$['counter.validateDocument.error.invalid']").exists());
+    }
+
+    @Test
+    public void testIValidationModes() throws Exception {
+        String document = "{\"source\": 1, \"destination\": 2}";
+
+        performAsync(post("/validate/goodSchema").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors.length()").value(2))
+                .andExpect(jsonPath("$.errors[0].pointer").value("/destination"))
+                .andExpect(jsonPath("$.errors[0].keyword").value("type"))
+                .andExpect(jsonPath("$.errors[0].message").exists());
+
+        performAsync(post("/validate/goodSchema?maxErrors=1").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.errors.length()").value(1));
+
+        performAsync(post("/validate/goodSchema?mode=failFast").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.errors.length()").value(1));
+
+        performAsync(post("/validate/goodSchema?mode=boolean").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors").doesNotExist());
+
+        performAsync(post("/validate/goodSchema?mode=boolean").contentType(MediaType.APPLICATION_JSON).content("{\"source\": \"a\", \"destination\": \"b\"}"))
+                .andExpect(jsonPath("$.status").value("success"));
+
+        performAsync(post("/validate/goodSchema?mode=unknown").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value("Unknown validation mode unknown (use full, failFast or boolean)"));
+
+        String batchResults = this.mvc.perform(post("/validate/goodSchema/batch?mode=failFast").contentType("application/x-ndjson")
+                .content(document + "\n" + document))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = batchResults.split("\n");
+        assertEquals(2, lines.length);
+        JSONAssert.assertEquals("{\"index\": 1, \"status\": \"error\", \"errors\": [{\"keyword\": \"type\"}]}", lines[1], false);
+    }
+
+    @Test
+    public void testJValidateMany() throws Exception {
+        String validDocument = "{\"source\": \"a\", \"destination\": \"b\"}";
+        String invalidDocument = "{\"destination\": \"b\"}";
+
+        this.mvc.perform(post("/schema/envelopeSchema").contentType(MediaType.APPLICATION_JSON).content("{\"type\": \"object\"}"));
+        this.mvc.perform(post("/schema/profileSchema").contentType(MediaType.APPLICATION_JSON).content("{\"required\": [\"source\"]}"));
+
+        performAsync(post("/validate?schemas=envelopeSchema,profileSchema,goodSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(jsonPath("$.action").value("validateMany"))
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.results.length()").value(3))
+                .andExpect(jsonPath("$.results[0].id").value("envelopeSchema"))
+                .andExpect(jsonPath("$.results[2].id").value("goodSchema"));
+
+        performAsync(post("/validate?schemas=envelopeSchema,profileSchema,goodSchema").contentType(MediaType.APPLICATION_JSON).content(invalidDocument))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.results.length()").value(3))
+                .andExpect(jsonPath("$.results[0].status").value("success"))
+                .andExpect(jsonPath("$.results[1].status").value("error"))
+                .andExpect(jsonPath("$.results[1].errors[0].keyword").value("required"));
+
+        performAsync(post("/validate?schemas=profileSchema,goodSchema&all=1").contentType(MediaType.APPLICATION_JSON).content(invalidDocument))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.results[0].status").value("error"));
+
+        performAsync(post("/validate?schemas=envelopeSchema,nonexistentSchema").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.id").value("nonexistentSchema"));
+    }
+
+    @Test
+    public void testKSchemaReferences() throws Exception {
+        String stringSource = "{\"source\": \"a\"}";
+        String integerSource = "{\"source\": 1}";
+
+        this.mvc.perform(post("/schema/commonSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"definitions\": {\"name\": {\"type\": \"string\"}}}"));
+        this.mvc.perform(post("/schema/refSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"properties\": {\"source\": {\"$ref\": \"schema:///commonSchema#/definitions/name\"}}}"));
+        this.mvc.perform(post("/schema/chainSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"$ref\": \"schema:///refSchema\"}"));
+
+        performAsync(post("/validate/refSchema").contentType(MediaType.APPLICATION_JSON).content(stringSource))
+                .andExpect(jsonPath("$.status").value("success"));
+        performAsync(post("/validate/refSchema").contentType(MediaType.APPLICATION_JSON).content(integerSource))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors[0].pointer").value("/source"));
+        performAsync(post("/validate/chainSchema").contentType(MediaType.APPLICATION_JSON).content(integerSource))
+                .andExpect(jsonPath("$.status").value("error"));
+
+        // Overwriting a referenced schema invalidates every schema referencing it, directly or not
+        this.mvc.perform(post("/schema/commonSchema?override=1").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"definitions\": {\"name\": {\"type\": \"integer\"}}}"));
+
+        performAsync(post("/validate/refSchema").contentType(MediaType.APPLICATION_JSON).content(integerSource))
+                .andExpect(jsonPath("$.status").value("success"));
+        performAsync(post("/validate/chainSchema").contentType(MediaType.APPLICATION_JSON).content(stringSource))
+                .andExpect(jsonPath("$.status").value("error"));
+
+        this.mvc.perform(post("/schema/danglingSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"$ref\": \"schema:///nonexistentSchema\"}"));
+        performAsync(post("/validate/danglingSchema").contentType(MediaType.APPLICATION_JSON).content(stringSource))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value(startsWith("Exception while processing JSON schema")));
+    }
+
+    @Test
+    public void testLSchemaWarmUp() throws Exception {
+        AtomicInteger storedSchemas = new AtomicInteger();
+        databaseProvider.scan((key, value) -> storedSchemas.incrementAndGet() > 0);
+
+        assertTrue(schemaWarmUp.warmUp());
+
+        Health health = schemaWarmUp.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(storedSchemas.get(), health.getDetails().get("schemas"));
+        assertEquals(storedSchemas.get(), health.getDetails().get("compiled"));
+        assertTrue(schemaCache.size() >= storedSchemas.get());
+
+        this.mvc.perform(get("/health"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testMImportExportSchemas() throws Exception {
+        String schemas = "{\"id\": \"importedString\", \"schema\": {\"type\": \"string\"}}\n"
+                + "\n"
+                + "{\"id\": \"importedInteger\", \"schema\": {\"type\": \"integer\"}}\n";
+
+        this.mvc.perform(post("/schema").contentType("application/x-ndjson").content(schemas))
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.message").value("Imported 2 schemas"));
+
+        this.mvc.perform(get("/schema/importedInteger"))
+                .andExpect(content().json("{\"type\": \"integer\"}"));
+        performAsync(post("/validate/importedString").contentType(MediaType.APPLICATION_JSON).content("1"))
+                .andExpect(jsonPath("$.status").value("error"));
+
+        // Nothing is stored if any schema already exists, or any line is invalid
+        this.mvc.perform(post("/schema").contentType("application/x-ndjson")
+                .content("{\"id\": \"importedNew\", \"schema\": {}}\n{\"id\": \"importedString\", \"schema\": {}}"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value("Schemas with ids [importedString] already exist (use /schema?override=1 to overwrite)"));
+        this.mvc.perform(post("/schema").contentType("application/x-ndjson")
+                .content("{\"id\": \"importedNew\", \"schema\": {}}\n{\"id\": \"importedBroken\" \"schema\": {}}"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value(startsWith("Invalid JSON: line 2:")));
+        assertNull(databaseProvider.get("importedNew".getBytes(StandardCharsets.UTF_8)));
+
+        this.mvc.perform(post("/schema?override=1").contentType("application/x-ndjson")
+                .content("{\"id\": \"importedString\", \"schema\": {\"type\": \"integer\"}}"))
+                .andExpect(jsonPath("$.status").value("success"));
+        performAsync(post("/validate/importedString").contentType(MediaType.APPLICATION_JSON).content("1"))
+                .andExpect(jsonPath("$.status").value("success"));
+
+        String export = this.mvc.perform(get("/schema"))
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        AtomicInteger storedSchemas = new AtomicInteger();
+        databaseProvider.scan((key, value) -> storedSchemas.incrementAndGet() > 0);
+
+        String[] lines = export.split("\n");
+        assertEquals(storedSchemas.get(), lines.length);
+        assertTrue(export.contains("{\"id\":\"importedInteger\",\"schema\":{\"type\":\"integer\"}}\n"));
+    }
+
+    @Test
+    public void testNValidationResultCache() throws Exception {
+        String document = "{\"source\": 1, \"destination\": \"b\"}";
+
+        this.mvc.perform(post("/schema/resultSchema").contentType(MediaType.APPLICATION_JSON).content(readResource("goodSchema.json")));
+
+        long hits = resultCache.stats().hitCount();
+        performAsync(post("/validate/resultSchema").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("error"));
+        performAsync(post("/validate/resultSchema").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors[0].pointer").value("/source"));
+        assertEquals(hits + 1, resultCache.stats().hitCount());
+
+        // Results depend on the validation options
+        performAsync(post("/validate/resultSchema?mode=boolean").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.errors").doesNotExist());
+        assertEquals(hits + 1, resultCache.stats().hitCount());
+
+        // Overwriting the schema invalidates its results
+        this.mvc.perform(post("/schema/resultSchema?override=1").contentType(MediaType.APPLICATION_JSON).content("{\"type\": \"object\"}"));
+        performAsync(post("/validate/resultSchema").contentType(MediaType.APPLICATION_JSON).content(document))
+                .andExpect(jsonPath("$.status").value("success"));
+        assertEquals(hits + 1, resultCache.stats().hitCount());
+
+        this.mvc.perform(get("/metrics"))
+                .andExpect(jsonPath("$['cache.result.hit']").exists())
+                .andExpect(jsonPath("$['cache.result.hit.ratio']").exists());
+    }
+
+    @Test
+    public void testOConditionalRequests() throws Exception {
+        String goodSchema = readResource("goodSchema.json");
+
+        String etag = this.mvc.perform(post("/schema/etagSchema").contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", startsWith("\"1-")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        this.mvc.perform(get("/schema/etagSchema"))
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().json(goodSchema));
+
+        this.mvc.perform(get("/schema/etagSchema").header("If-None-Match", "\"0-abc\", " + etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+
+        this.mvc.perform(post("/schema/etagSchema").header("If-Match", "\"0-abc\"")
+                .contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.status").value("error"));
+
+        this.mvc.perform(post("/schema/missingSchema").header("If-Match", "*")
+                .contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isPreconditionFailed());
+
+        // The same content at a new version gets a new ETag
+        String newEtag = this.mvc.perform(post("/schema/etagSchema").header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(header().string("ETag", startsWith("\"2-")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        this.mvc.perform(get("/schema/etagSchema").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", newEtag));
+
+        // Weak tags only match with the weak comparison of If-None-Match
+        this.mvc.perform(get("/schema/etagSchema").header("If-None-Match", "W/" + newEtag))
+                .andExpect(status().isNotModified());
+        this.mvc.perform(post("/schema/etagSchema").header("If-Match", "W/" + newEtag)
+                .contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isPreconditionFailed());
+
+        // A stale ETag can't overwrite the new version
+        this.mvc.perform(post("/schema/etagSchema").header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void testPContentEncoding() throws Exception {
+        String goodSchema = readResource("goodSchema.json");
+        String validDocument = readResource("invalidDocument.json");
+
+        this.mvc.perform(post("/schema/gzipSchema").header("Content-Encoding", "gzip")
+                .contentType(MediaType.APPLICATION_JSON).content(encode(goodSchema, true)))
+                .andExpect(jsonPath("$.status").value("success"));
+
+        this.mvc.perform(get("/schema/gzipSchema"))
+                .andExpect(content().json(goodSchema));
+
+        performAsync(post("/validate/gzipSchema").header("Content-Encoding", "deflate")
+                .contentType(MediaType.APPLICATION_JSON).content(encode(validDocument, false)))
+                .andExpect(content().json(new JsonValidatorResponse("validateDocument", "gzipSchema", "success", null).toJsonString()));
+
+        this.mvc.perform(post("/validate/gzipSchema").header("Content-Encoding", "br")
+                .contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(status().isUnsupportedMediaType())
+                .andExpect(jsonPath("$.status").value("error"));
+
+        // A small body which inflates beyond request.decoding.max-size
+        StringBuilder bomb = new StringBuilder("{");
+        for (int i = 0; i < 2 * 1024 * 1024; i++) {
+            bomb.append(' ');
+        }
+        this.mvc.perform(post("/schema/bombSchema").header("Content-Encoding", "gzip")
+                .contentType(MediaType.APPLICATION_JSON).content(encode(bomb.append('}').toString(), true)))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.status").value("error"));
+        this.mvc.perform(get("/schema/bombSchema"))
+                .andExpect(jsonPath("$.status").value("error"));
+        performAsync(post("/validate/gzipSchema").header("Content-Encoding", "gzip")
+                .contentType(MediaType.APPLICATION_JSON).content(encode(bomb.toString(), true)))
+                .andExpect(status().isPayloadTooLarge())
+                .andExpect(jsonPath("$.status").value("error"));
+    }
+
+    @Test
+    public void testQStreamingValidation() throws Exception {
+        String validDocument = readResource("invalidDocument.json");
+
+        performAsync(post("/validate/goodSchema?stream=1").contentType(MediaType.APPLICATION_JSON).content(validDocument))
+                .andExpect(content().json(new JsonValidatorResponse("validateDocument", "goodSchema", "success", null).toJsonString()));
+
+        performAsync(post("/validate/goodSchema?stream=1").contentType(MediaType.APPLICATION_JSON).content("{\"source\": 1, \"destination\": 2}"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors.length()").value(2))
+                .andExpect(jsonPath("$.errors[0].pointer").value("/destination"))
+                .andExpect(jsonPath("$.errors[0].keyword").value("type"));
+
+        performAsync(post("/validate/goodSchema?stream=1&mode=boolean").contentType(MediaType.APPLICATION_JSON).content("{\"source\": 1"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors").doesNotExist());
+
+        performAsync(post("/validate/goodSchema?stream=1").contentType(MediaType.APPLICATION_JSON).content("{\"source\": "))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value(startsWith("Exception while processing JSON")));
+    }
+
+    @Test
+    public void testRSchemaChanges() throws Exception {
+        String goodSchema = readResource("goodSchema.json");
+        long latest = databaseProvider.latestSequence();
+
+        performAsync(get("/changes?since=" + latest + "&timeout=0"))
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.sequence").value(latest))
+                .andExpect(jsonPath("$.changes.length()").value(0));
+
+        // The poll waits for the upload
+        MvcResult poll = this.mvc.perform(get("/changes?since=" + latest + "&timeout=30"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mvc.perform(post("/schema/changedSchema").contentType(MediaType.APPLICATION_JSON).content(goodSchema))
+                .andExpect(jsonPath("$.status").value("success"));
+        this.mvc.perform(asyncDispatch(poll))
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.sequence").value(latest + 1))
+                .andExpect(jsonPath("$.changes[0].sequence").value(latest + 1))
+                .andExpect(jsonPath("$.changes[0].id").value("changedSchema"));
+
+        performAsync(get("/changes?since=" + (latest + 100) + "&timeout=0"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.sequence").value(latest + 1));
+    }
+
+    @Test
+    public void testSRegularExpressions() throws Exception {
+        String unsafeSchema = "{\"properties\": {\"name\": {\"pattern\": \"^(\\\\w+\\\\s?)*$\"}}}";
+        String safeSchema = "{\"properties\": {\"name\": {\"pattern\": \"^\\\\w+$\"}},"
+                + " \"patternProperties\": {\"^x-\": {}}, \"additionalProperties\": false}";
+
+        String unsafeSchemaError = new JsonValidatorResponse("uploadSchema", "regexSchema", "error",
+                "Schema with id regexSchema uses regular expressions which may take exponential time to match: [^(\\w+\\s?)*$]")
+                .toJsonString();
+        this.mvc.perform(post("/schema/regexSchema").contentType(MediaType.APPLICATION_JSON).content(unsafeSchema))
+                .andExpect(content().json(unsafeSchemaError));
+        this.mvc.perform(get("/schema/regexSchema"))
+                .andExpect(jsonPath("$.status").value("error"));
+
+        // Back references are left to an engine which can't be interrupted within the time limit
+        String unboundedSchemaError = new JsonValidatorResponse("uploadSchema", "regexSchema", "error",
+                "Schema with id regexSchema uses regular expressions which can't be matched within the time limit: [(a)\\1]")
+                .toJsonString();
+        this.mvc.perform(post("/schema/regexSchema").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"pattern\": \"(a)\\\\1\"}"))
+                .andExpect(content().json(unboundedSchemaError));
+
+        this.mvc.perform(post("/schema/regexSchema").contentType(MediaType.APPLICATION_JSON).content(safeSchema))
+                .andExpect(jsonPath("$.status").value("success"));
+        performAsync(post("/validate/regexSchema").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"abc\", \"x-a\": 1}"))
+                .andExpect(jsonPath("$.status").value("success"));
+        performAsync(post("/validate/regexSchema").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"a b\"}"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors[0].keyword").value("pattern"));
+        performAsync(post("/validate/regexSchema").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"ab\", \"y\": 1}"))
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.errors[0].keyword").value("additionalProperties"));
+
+        this.mvc.perform(get("/metrics"))
+                .andExpect(jsonPath("$['histogram.regex.regexSchema.count']").value(3))
+                .andExpect(jsonPath("$['counter.uploadSchema.error.regex']").exists());
+    }
 }
@@ -0,0 +1,50 @@
+package org.rzats.jsonschema;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LatencyReservoirTests {
+    @Test
+    public void testPercentiles() {
+        LatencyReservoir reservoir = new LatencyReservoir(1, TimeUnit.MINUTES);
+        assertEquals(0, reservoir.getSnapshot().get999thPercentile(), 0);
+
+        for (int value = 1; value <= 100000; value++) {
+            reservoir.update(value);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100000, snapshot.size());
+        assertEquals(50000, snapshot.getMedian(), 500);
+        assertEquals(99000, snapshot.get99thPercentile(), 990);
+        assertEquals(99900, snapshot.get999thPercentile(), 999);
+        assertEquals(100000, snapshot.getMax(), 1000);
+        assertEquals(1, snapshot.getMin());
+        assertEquals(100000, snapshot.getValues().length);
+
+        // Unchanged snapshots are reused
+        assertSame(snapshot, reservoir.getSnapshot());
+    }
+
+    @Test
+    public void testWindows() throws Exception {
+        LatencyReservoir reservoir = new LatencyReservoir(50, TimeUnit.MILLISECONDS);
+        reservoir.update(1000);
+        assertEquals(1, reservoir.getSnapshot().size());
+
+        // Values are kept for a window after the one they were recorded in
+        Thread.sleep(60);
+        assertEquals(1, reservoir.getSnapshot().size());
+        reservoir.update(10);
+        assertEquals(2, reservoir.getSnapshot().size());
+
+        Thread.sleep(60);
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals(10, snapshot.getMax());
+    }
+}
@@ -0,0 +1,47 @@
+package org.rzats.jsonschema;
+
+import com.github.fge.jackson.JsonLoader;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegexAnalyzerTests {
+    @Test
+    public void testUnsafePatterns() {
+        for (String pattern : Arrays.asList(
+                "(a+)+", "^(a+)+$", "(a*)*", "(\\w+\\s?)*$", "(.*a)+", "(a|ab)*", "(\\d|[0-9a-f])+", "(x+x+)+y",
+                "((ab)+)+", "([a-z]+)*@", "(?:a+?)+")) {
+            assertTrue(pattern, RegexAnalyzer.isUnsafe(pattern));
+        }
+    }
+
+    @Test
+    public void testSafePatterns() {
+        for (String pattern : Arrays.asList(
+                "", "^[a-z]+$", "(\\w+\\.)*\\w+", "(ba+)+", "(a|b)*", "^\\d{3}-\\d{4}$", "(https?|ftp)://", ".*a.*b",
+                "[(]+", "\\(a+\\)+", "a{2,}", "^[a-zA-Z0-9._%+-]+@[a-z]+(\\.[a-z]+)*$", "([^,]*,)*",
+                // Not valid expressions, left to the syntax validation
+                "(a+", "[a-")) {
+            assertFalse(pattern, RegexAnalyzer.isUnsafe(pattern));
+        }
+    }
+
+    @Test
+    public void testSchemaPatterns() throws Exception {
+        assertEquals(Arrays.asList("(a+)+", "(x|x)*"), Arrays.asList(RegexAnalyzer.unsafePatterns(JsonLoader.fromString(
+                "{\"properties\": {\"a\": {\"pattern\": \"(a+)+\"}, \"b\": {\"pattern\": \"^b+$\"}},"
+                        + " \"patternProperties\": {\"(x|x)*\": {}, \"^y\": {\"items\": [{\"pattern\": \"(a+)+\"}]}}}"))
+                .toArray()));
+        assertTrue(RegexAnalyzer.unsafePatterns(JsonLoader.fromString("{\"properties\": {\"pattern\": {}}}")).isEmpty());
+
+        assertEquals(Arrays.asList("(a)\\1", "[\\ud800-\\udbff]"), Arrays.asList(RegexAnalyzer.unboundedPatterns(
+                JsonLoader.fromString("{\"properties\": {\"a\": {\"pattern\": \"(a)\\\\1\"}, \"b\": {\"pattern\": \"^\\\\s+$\"}},"
+                        + " \"patternProperties\": {\"[\\\\ud800-\\\\udbff]\": {}}}")).toArray()));
+        assertEquals(Arrays.asList("^b+$"), Arrays.asList(RegexAnalyzer.unboundedPatterns(JsonLoader.fromString(
+                "{\"$schema\": \"http://json-schema.org/draft-03/schema#\", \"pattern\": \"^b+$\"}")).toArray()));
+    }
+}
@@ -0,0 +1,51 @@
+package org.rzats.jsonschema;
+
+import com.github.fge.jackson.JsonLoader;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SchemaCacheTests {
+    private static void awaitCollection(WeakReference<?> reference) throws InterruptedException {
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testEvictedSchemasAreReleased() throws Exception {
+        SchemaStore schemaStore = mock(SchemaStore.class);
+        when(schemaStore.get("a")).thenAnswer(invocation -> JsonLoader.fromString(
+                "{\"type\": \"object\", \"properties\": {\"x\": {\"type\": \"string\"}}}"));
+        when(schemaStore.get("b")).thenAnswer(invocation -> JsonLoader.fromString("{\"type\": \"array\"}"));
+        SchemaCache cache = new SchemaCache(schemaStore, mock(ValidatorMetrics.class), 1, 0, 0);
+
+        // The processor of a schema holds the validators it built, and is only used by that schema
+        CompiledSchema a = cache.get("a");
+        assertTrue(a.validate(JsonLoader.fromString("{\"x\": \"y\"}")).isSuccess());
+        WeakReference<Object> processorA = new WeakReference<>(a.getProcessor());
+        CompiledSchema b = cache.get("b");
+        assertNotSame(a.getProcessor(), b.getProcessor());
+        a = null;
+
+        // Loading b evicted a
+        assertTrue(b.validate(JsonLoader.fromString("[]")).isSuccess());
+        awaitCollection(processorA);
+        assertNull(processorA.get());
+
+        // Overwritten schemas are released as well
+        WeakReference<Object> processorB = new WeakReference<>(b.getProcessor());
+        b = null;
+        cache.invalidate("b");
+        assertTrue(cache.get("b").validate(JsonLoader.fromString("[]")).isSuccess());
+        awaitCollection(processorB);
+        assertNull(processorB.get());
+    }
+}
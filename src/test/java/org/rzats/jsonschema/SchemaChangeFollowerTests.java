@@ -0,0 +1,127 @@
+package org.rzats.jsonschema;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs two nodes on random local ports, the second one following the first one.
+ */
+public class SchemaChangeFollowerTests {
+    private static final long WAIT_MILLIS = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RestTemplate restTemplate = new RestTemplate();
+    private ConfigurableApplicationContext leader;
+    private ConfigurableApplicationContext follower;
+
+    private ConfigurableApplicationContext start(String... peers) throws Exception {
+        // Command line arguments take precedence over application.properties
+        List<String> args = new ArrayList<>(Arrays.asList("--server.port=0",
+                "--rocksdb.path=" + folder.newFolder().getAbsolutePath(),
+                "--schema.follow.poll-timeout=2", "--schema.follow.retry-delay=100", "--spring.jmx.enabled=false"));
+        if (peers.length > 0) {
+            args.add("--schema.follow.peers=" + String.join(",", peers));
+        }
+        return new SpringApplicationBuilder(JsonValidatorApplication.class).run(args.toArray(new String[args.size()]));
+    }
+
+    private static String url(ConfigurableApplicationContext context) {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    private void upload(String id, String schema) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String response = restTemplate.postForObject(url(leader) + "/schema/{id}?override=1",
+                new HttpEntity<>(schema, headers), String.class, id);
+        assertTrue(response, response.contains("success"));
+    }
+
+    private String validate(ConfigurableApplicationContext context, String id, String document) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return restTemplate.postForObject(url(context) + "/validate/{id}", new HttpEntity<>(document, headers), String.class, id);
+    }
+
+    private String awaitValidation(String id, String document, String status) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        String response = validate(follower, id, document);
+        while (!response.contains("\"status\" : \"" + status + "\"") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            response = validate(follower, id, document);
+        }
+        return response;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        leader = start();
+        // Copied by the follower when it starts
+        upload("existingSchema", "{\"type\": \"object\"}");
+        follower = start(url(leader));
+    }
+
+    @After
+    public void tearDown() {
+        if (follower != null) {
+            follower.close();
+        }
+        if (leader != null) {
+            leader.close();
+        }
+    }
+
+    @Test
+    public void testFollowsChanges() throws Exception {
+        String goodSchema = Resources.toString(Resources.getResource("goodSchema.json"), Charsets.UTF_8);
+        String validDocument = Resources.toString(Resources.getResource("invalidDocument.json"), Charsets.UTF_8);
+
+        assertTrue(awaitValidation("existingSchema", "{}", "success").contains("success"));
+
+        upload("followedSchema", goodSchema);
+        String response = awaitValidation("followedSchema", validDocument, "success");
+        assertTrue(response, response.contains("success"));
+
+        // Overwriting the schema invalidates the follower's compiled schema
+        upload("followedSchema", "{\"type\": \"array\"}");
+        response = awaitValidation("followedSchema", validDocument, "error");
+        assertTrue(response, response.contains("Document does not conform to the schema"));
+        assertEquals(validate(leader, "followedSchema", validDocument), response);
+    }
+
+    @Test
+    public void testHealth() throws Exception {
+        assertTrue(awaitValidation("existingSchema", "{}", "success").contains("success"));
+        Health health = follower.getBean(SchemaChangeFollower.class).health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(true, ((Map<?, ?>) health.getDetails().get(url(leader))).get("synchronized"));
+
+        // A peer which has never been copied
+        health = new SchemaChangeFollower(null, null, new String[]{"http://localhost:1"}, 1, 100).health();
+        assertEquals(Status.UNKNOWN, health.getStatus());
+        assertEquals(false, ((Map<?, ?>) health.getDetails().get("http://localhost:1")).get("synchronized"));
+    }
+}
@@ -0,0 +1,179 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.load.SchemaLoader;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link SpecializedValidator} against the validation processor, on random documents built from values
+ * which sit on the boundaries of the schemas.
+ */
+public class SpecializedValidatorTests {
+    private static final int DOCUMENTS = 400;
+
+    private static final List<String> SCHEMAS = Arrays.asList(
+            "{}",
+            "{\"type\": \"integer\"}",
+            "{\"type\": [\"number\", \"null\"], \"minimum\": 1, \"maximum\": 10, \"exclusiveMaximum\": true}",
+            "{\"minimum\": 0.5, \"exclusiveMinimum\": true, \"maximum\": 123456789012345678901234567890}",
+            "{\"multipleOf\": 0.5}",
+            "{\"multipleOf\": 3}",
+            "{\"enum\": [\"a\", \"abc\", 1, null, [1, 2], {\"a\": 1}]}",
+            "{\"enum\": [\"a\", \"h\\u00e9llo\"]}",
+            "{\"type\": \"string\", \"minLength\": 2, \"maxLength\": 3}",
+            "{\"pattern\": \"^[a-z]+[0-9]*$\"}",
+            "{\"pattern\": \"b.\"}",
+            "{\"pattern\": \"\\\\w\\\\s?\\\\d\"}",
+            "{\"pattern\": \"[^]x|\\\\u00e9\"}",
+            "{\"type\": \"array\", \"minItems\": 1, \"maxItems\": 3, \"uniqueItems\": true}",
+            "{\"items\": {\"type\": \"number\"}}",
+            "{\"items\": [{\"type\": \"string\"}, {\"type\": \"integer\"}], \"additionalItems\": false}",
+            "{\"items\": [{\"type\": \"string\"}], \"additionalItems\": {\"type\": \"boolean\"}}",
+            "{\"type\": \"object\", \"required\": [\"a\", \"b\"], \"minProperties\": 2, \"maxProperties\": 3}",
+            "{\"properties\": {\"a\": {\"type\": \"string\"}, \"b\": {\"type\": \"array\"}}, \"additionalProperties\": false}",
+            "{\"properties\": {\"a\": {\"minLength\": 2}}, \"patternProperties\": {\"^f\": {\"type\": \"integer\"}, \"o\": {\"minimum\": 1}},"
+                    + " \"additionalProperties\": {\"type\": [\"string\", \"null\"]}}",
+            "{\"dependencies\": {\"a\": [\"b\"], \"foo\": {\"required\": [\"bar\"]}}}",
+            "{\"allOf\": [{\"type\": \"object\"}, {\"required\": [\"a\"]}]}",
+            "{\"anyOf\": [{\"type\": \"string\", \"maxLength\": 1}, {\"type\": \"integer\"}, {\"items\": {\"type\": \"null\"}}]}",
+            "{\"oneOf\": [{\"type\": \"number\"}, {\"type\": \"integer\"}, {\"minLength\": 3}]}",
+            "{\"not\": {\"type\": [\"array\", \"object\"]}}",
+            "{\"definitions\": {\"tree\": {\"type\": \"object\", \"properties\": {\"a\": {\"$ref\": \"#/definitions/tree\"},"
+                    + " \"b\": {\"$ref\": \"#/definitions/leaf\"}}}, \"leaf\": {\"type\": [\"integer\", \"string\"]}},"
+                    + " \"anyOf\": [{\"$ref\": \"#/definitions/tree\"}, {\"type\": \"array\", \"items\": {\"$ref\": \"#\"}}]}",
+            "{\"properties\": {\"a\": {\"format\": \"email\"}, \"b\": {\"$ref\": \"#/definitions/a\"}},"
+                    + " \"definitions\": {\"a\": {\"$ref\": \"#/definitions/b\"}, \"b\": {\"maxProperties\": 1}}}",
+            "{\"properties\": {\"a\": {\"id\": \"#a\", \"type\": \"string\"}, \"b\": {\"$ref\": \"#/definitions/x\"}},"
+                    + " \"definitions\": {\"x\": {\"type\": \"string\"}}}");
+
+    private static final List<String> STRINGS = Arrays.asList(
+            "", "a", "abc", "abcd", "b1", "h\u00e9llo", "\ud83d\ude00\ud83d\ude00", "abc\n", "foo123", "x", "1 2");
+    private static final List<String> NAMES = Arrays.asList("a", "b", "foo", "bar", "o", "x");
+    private static final List<String> NUMBERS = Arrays.asList(
+            "0", "1", "-1", "1.0", "0.5", "1.5", "3", "9.999", "10", "10.0", "1e2",
+            "123456789012345678901234567890", "123456789012345678901234567891", "9223372036854775808");
+
+    private static CompiledSchema compile(String schema, long specializationThreshold) throws Exception {
+        return new CompiledSchema(JsonSchemaFactory.byDefault().getProcessor(),
+                new SchemaLoader().load(JsonLoader.fromString(schema)), specializationThreshold);
+    }
+
+    private static SpecializedValidator specialize(CompiledSchema schema, String node) throws Exception {
+        return new SpecializedValidator(schema, JsonLoader.fromString(node));
+    }
+
+    private static String randomValue(Random random, int depth) {
+        switch (random.nextInt(depth > 0 ? 7 : 5)) {
+            case 0:
+                return "null";
+            case 1:
+                return random.nextBoolean() ? "true" : "false";
+            case 2:
+                return NUMBERS.get(random.nextInt(NUMBERS.size()));
+            case 3:
+            case 4:
+                String value = STRINGS.get(random.nextInt(STRINGS.size()));
+                return "\"" + value.replace("\n", "\\n") + "\"";
+            case 5:
+                List<String> items = new ArrayList<>();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    items.add(randomValue(random, depth - 1));
+                }
+                return "[" + String.join(", ", items) + "]";
+            default:
+                List<String> fields = new ArrayList<>();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    fields.add("\"" + NAMES.get(random.nextInt(NAMES.size())) + "\": " + randomValue(random, depth - 1));
+                }
+                return "{" + String.join(", ", fields) + "}";
+        }
+    }
+
+    private static List<String> messages(ProcessingReport report) {
+        List<String> messages = new ArrayList<>();
+        for (ProcessingMessage message : report) {
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    @Test
+    public void testAgreesWithValidationProcessor() throws Exception {
+        Random random = new Random(42);
+        for (String schemaText : SCHEMAS) {
+            CompiledSchema schema = compile(schemaText, 0);
+            SpecializedValidator validator = specialize(schema, schemaText);
+            assertTrue(schemaText, validator.isSupported());
+
+            int valid = 0;
+            for (int i = 0; i < DOCUMENTS; i++) {
+                String document = randomValue(random, 3);
+                JsonNode node = JsonLoader.fromString(document);
+                boolean expected = schema.validate(node).isSuccess();
+                assertEquals(schemaText + " " + document, expected, validator.isValid(node));
+                valid += expected ? 1 : 0;
+            }
+            // The documents have to exercise both outcomes for the comparison to mean anything
+            assertTrue(schemaText, schemaText.equals("{}") || (valid > 0 && valid < DOCUMENTS));
+        }
+    }
+
+    @Test
+    public void testSpecializedReportsMatch() throws Exception {
+        Random random = new Random(7);
+        for (String schemaText : SCHEMAS) {
+            CompiledSchema plain = compile(schemaText, 0);
+            CompiledSchema specialized = compile(schemaText, 1);
+            for (int i = 0; i < DOCUMENTS / 4; i++) {
+                JsonNode node = JsonLoader.fromString(randomValue(random, 3));
+                for (ValidationMode mode : ValidationMode.values()) {
+                    ProcessingReport expected = plain.validate(node, mode, 0);
+                    ProcessingReport actual = specialized.validate(node, mode, 0);
+                    assertEquals(expected.isSuccess(), actual.isSuccess());
+                    assertEquals(messages(expected), messages(actual));
+                }
+            }
+            assertTrue(schemaText, specialized.isSpecialized());
+        }
+    }
+
+    @Test
+    public void testSpecializationThreshold() throws Exception {
+        CompiledSchema schema = compile("{\"type\": \"string\"}", 3);
+        JsonNode document = JsonLoader.fromString("\"abc\"");
+        for (int i = 0; i < 2; i++) {
+            schema.validate(document);
+            assertFalse(schema.isSpecialized());
+        }
+        schema.validate(document);
+        assertTrue(schema.isSpecialized());
+        assertFalse(compile("{\"type\": \"string\"}", 0).isSpecialized());
+    }
+
+    @Test
+    public void testUnsupportedSchemas() throws Exception {
+        for (String schemaText : Arrays.asList(
+                "{\"required\": []}",
+                "{\"type\": \"text\"}",
+                "{\"$schema\": \"http://json-schema.org/draft-03/schema#\", \"type\": \"string\"}")) {
+            assertFalse(schemaText, specialize(compile(schemaText, 1), schemaText).isSupported());
+        }
+
+        CompiledSchema schema = compile("{\"$schema\": \"http://json-schema.org/draft-03/schema#\", \"type\": \"string\"}", 1);
+        assertTrue(schema.validate(JsonLoader.fromString("\"abc\"")).isSuccess());
+        assertFalse(schema.isSpecialized());
+    }
+}
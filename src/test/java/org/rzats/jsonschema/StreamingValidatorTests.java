@@ -0,0 +1,174 @@
+package org.rzats.jsonschema;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.load.SchemaLoader;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingValidatorTests {
+    private static final String SCHEMA = "{"
+            + "\"type\": \"object\","
+            + "\"required\": [\"name\", \"items\"],"
+            + "\"additionalProperties\": false,"
+            + "\"properties\": {"
+            + "  \"name\": {\"type\": \"string\", \"minLength\": 2, \"maxLength\": 5},"
+            + "  \"kind\": {\"enum\": [\"a\", \"b\", 1]},"
+            + "  \"size\": {\"type\": \"number\", \"minimum\": 0, \"maximum\": 10, \"exclusiveMaximum\": true, \"multipleOf\": 0.5},"
+            + "  \"tags\": {\"type\": \"array\", \"items\": [{\"type\": \"string\"}], \"additionalItems\": false},"
+            + "  \"items\": {\"type\": \"array\", \"minItems\": 1, \"maxItems\": 3, \"items\": {"
+            + "    \"type\": \"object\", \"minProperties\": 1, \"maxProperties\": 2,"
+            + "    \"additionalProperties\": {\"type\": \"integer\"}"
+            + "  }},"
+            + "  \"choice\": {\"anyOf\": [{\"type\": \"string\"}, {\"type\": \"null\"}]}"
+            + "}}";
+
+    private static CompiledSchema compile(String schema) throws Exception {
+        return new CompiledSchema(JsonSchemaFactory.byDefault().getProcessor(),
+                new SchemaLoader().load(JsonLoader.fromString(schema)));
+    }
+
+    private static ProcessingReport validateStream(CompiledSchema schema, String document, ValidationMode mode) throws Exception {
+        return validateStream(schema, document, mode, 0);
+    }
+
+    private static ProcessingReport validateStream(CompiledSchema schema, String document, ValidationMode mode,
+                                                   int maxErrors) throws Exception {
+        return schema.validate(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), mode, maxErrors);
+    }
+
+    private static List<String> errors(ProcessingReport report) {
+        List<String> errors = new ArrayList<>();
+        for (ProcessingMessage message : report) {
+            ValidationError error = ValidationError.fromMessage(message);
+            errors.add(error.getPointer() + " " + error.getKeyword());
+        }
+        return errors;
+    }
+
+    @Test
+    public void testAgreesWithTreeValidation() throws Exception {
+        CompiledSchema schema = compile(SCHEMA);
+        List<String> documents = Arrays.asList(
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}]}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1.5}]}",
+                "{\"name\": \"a\", \"items\": [{\"a\": 1}]}",
+                "{\"name\": \"abcdef\", \"items\": [{\"a\": 1}]}",
+                "{\"name\": \"abc\", \"items\": []}",
+                "{\"name\": \"abc\", \"items\": [{}, {}, {}, {}]}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1, \"b\": 2, \"c\": 3}]}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"kind\": \"b\"}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"kind\": 1.0}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"kind\": \"c\"}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"kind\": {\"a\": 1}}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"size\": 9.5}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"size\": 10}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"size\": -1}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"size\": 0.3}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"tags\": [\"x\"]}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"tags\": [\"x\", \"y\"]}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"choice\": null}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"choice\": 1}",
+                "{\"name\": \"abc\", \"items\": [{\"a\": 1}], \"other\": 1}",
+                "{\"items\": [{\"a\": 1}]}",
+                "[1, 2]",
+                "\"abc\"");
+
+        assertAgrees(schema, documents);
+
+        // Errors at a level stop the processor from validating the content of the containers which follow
+        assertAgrees(compile("{\"required\": [\"id\"], \"properties\": {\"n\": {\"type\": \"string\"}}}"),
+                Arrays.asList("{\"n\": 1}", "{\"id\": 1, \"n\": 1}"));
+        assertAgrees(compile("{\"additionalProperties\": {\"type\": \"string\"},"
+                        + " \"properties\": {\"b\": {\"additionalProperties\": {\"type\": \"string\"}}}}"),
+                Arrays.asList("{\"a\": 1, \"b\": {\"c\": 2}}", "{\"b\": {\"c\": 2}, \"a\": 1}",
+                        "{\"b\": {\"c\": 2}, \"a\": \"x\", \"c\": 3}"));
+        assertAgrees(compile("{\"items\": {\"type\": \"array\", \"maxItems\": 1, \"items\": {\"type\": \"integer\","
+                        + " \"minimum\": 2, \"multipleOf\": 2}}}"),
+                Arrays.asList("[[1, \"x\"], [3]]", "[[3], [1, \"x\"]]", "[[4], [\"x\"], [1, 2]]", "[{}, [1]]"));
+        assertAgrees(compile("{\"type\": \"array\", \"minItems\": 3, \"items\": {\"type\": \"string\"}}"),
+                Arrays.asList("[1, \"a\"]", "[1, \"a\", 2]"));
+        assertAgrees(compile("{\"properties\": {\"a\": {\"anyOf\": [{\"type\": \"string\"}]},"
+                        + " \"b\": {\"allOf\": [{\"type\": \"object\"}], \"properties\": {\"c\": {\"type\": \"string\"}}}}}"),
+                Arrays.asList("{\"a\": 1, \"b\": {\"c\": 2}}", "{\"a\": \"x\", \"b\": {\"c\": 2}}", "{\"b\": 1}"));
+    }
+
+    /**
+     * Checks that the errors found while reading each document are the same as those found in its tree, in every
+     * mode.
+     */
+    private static void assertAgrees(CompiledSchema schema, List<String> documents) throws Exception {
+        for (String document : documents) {
+            JsonNode node = JsonLoader.fromString(document);
+            assertEquals(document, errors(schema.validate(node, ValidationMode.FULL, 0)),
+                    errors(validateStream(schema, document, ValidationMode.FULL)));
+            assertEquals(document, errors(schema.validate(node, ValidationMode.FULL, 2)),
+                    errors(validateStream(schema, document, ValidationMode.FULL, 2)));
+            assertEquals(document, errors(schema.validate(node, ValidationMode.FAIL_FAST, 0)),
+                    errors(validateStream(schema, document, ValidationMode.FAIL_FAST)));
+            assertEquals(document, schema.validate(node, ValidationMode.BOOLEAN, 0).isSuccess(),
+                    validateStream(schema, document, ValidationMode.BOOLEAN).isSuccess());
+        }
+    }
+
+    @Test
+    public void testErrorPointers() throws Exception {
+        CompiledSchema schema = compile(SCHEMA);
+        ProcessingReport report = validateStream(schema,
+                "{\"name\": \"a\", \"items\": [{\"a\": 1}, {\"b\": \"x\"}], \"choice\": 1}", ValidationMode.FULL);
+
+        // Members are validated in name order, and once /choice has failed the content of /items isn't validated
+        assertFalse(report.isSuccess());
+        // Validated by the validation processor, from the matching part of the document
+        assertEquals(Arrays.asList("/choice anyOf", "/name minLength"), errors(report));
+
+        report = validateStream(schema, "{\"name\": \"abc\", \"items\": [{\"a\": 1}, {\"b\": \"x\"}]}", ValidationMode.FULL);
+        assertEquals(Arrays.asList("/items/1/b type"), errors(report));
+
+        // Errors of the object itself are reported before (and instead of) the errors of its content
+        report = validateStream(schema, "{\"name\": \"a\", \"items\": [{\"a\": 1}], \"other\": true}", ValidationMode.FULL);
+        assertEquals(Arrays.asList(" additionalProperties"), errors(report));
+    }
+
+    @Test
+    public void testFallbackForWholeDocument() throws Exception {
+        CompiledSchema schema = compile("{\"allOf\": [{\"type\": \"object\"}, {\"required\": [\"a\"]}]}");
+
+        assertTrue(validateStream(schema, "{\"a\": 1}", ValidationMode.FULL).isSuccess());
+        ProcessingReport report = validateStream(schema, "{\"b\": 1}", ValidationMode.FULL);
+        assertFalse(report.isSuccess());
+        assertEquals(Arrays.asList(" allOf"), errors(report));
+    }
+
+    @Test
+    public void testFailFastStopsReading() throws Exception {
+        CompiledSchema schema = compile("{\"type\": \"array\", \"items\": {\"type\": \"integer\"}}");
+
+        // The rest of the document isn't read, so it isn't even checked for syntax errors
+        ProcessingReport report = validateStream(schema, "[1, \"two\", 3, {{{", ValidationMode.FAIL_FAST);
+        assertFalse(report.isSuccess());
+        assertEquals(Arrays.asList("/1 type"), errors(report));
+
+        report = validateStream(schema, "[1, \"two\", 3, \"four\"]", ValidationMode.BOOLEAN);
+        assertFalse(report.isSuccess());
+        assertFalse(report.iterator().hasNext());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void testTrailingContent() throws Exception {
+        validateStream(compile("{}"), "{} {}", ValidationMode.FULL);
+    }
+}
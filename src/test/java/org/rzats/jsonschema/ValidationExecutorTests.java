@@ -0,0 +1,65 @@
+package org.rzats.jsonschema;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ValidationExecutorTests {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ValidationExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new ValidationExecutor(1, 1, 1, 5);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private String await(String result) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        assertEquals("a", executor.submit("schemaA", () -> "a").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testPerSchemaLimit() {
+        executor.submit("schemaA", () -> await("a"));
+        executor.submit("schemaA", () -> "a");
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testQueueFull() {
+        executor.submit("schemaA", () -> await("a"));
+        executor.submit("schemaB", () -> await("b"));
+        executor.submit("schemaC", () -> "c");
+    }
+
+    @Test
+    public void testPermitsReleased() throws Exception {
+        CompletableFuture<String> first = executor.submit("schemaA", () -> await("a"));
+        release.countDown();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+
+        assertEquals("b", executor.submit("schemaA", () -> "b").get(5, TimeUnit.SECONDS));
+        assertEquals(5, executor.getRetryAfter());
+    }
+}
@@ -1,19 +1,30 @@
 package org.rzats.jsonschema.database;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * An implementation of {@link DatabaseProvider} using an underlying hashmap.
+ * An implementation of {@link DatabaseProvider} using an underlying concurrent hashmap. Scans visit the entries
+ * in no particular order. Reads and writes are synchronized, so batches are atomic. The change log is kept in full.
+ * <p>
+ * It replaces the RocksDB database whenever it is on the classpath, unless database.in-memory is false.
  */
 @Service
 @Primary
+@ConditionalOnProperty(name = "database.in-memory", matchIfMissing = true)
 public class HashMapDatabaseProvider implements DatabaseProvider {
-    private Map<ByteArrayWrapper, Byte[]> map = new HashMap<>();
+    private Map<ByteArrayWrapper, Byte[]> map = new ConcurrentHashMap<>();
+    private NavigableMap<Long, byte[]> changes = new TreeMap<>();
+    private long sequence;
 
     /**
      * Converts a byte[] array to a Byte[] array.
@@ -50,13 +61,69 @@ public class HashMapDatabaseProvider implements DatabaseProvider {
     }
 
     @Override
-    public byte[] get(byte[] key) throws DatabaseProviderException {
+    public synchronized byte[] get(byte[] key) throws DatabaseProviderException {
         return toPrimitives(map.get(new ByteArrayWrapper(key)));
     }
 
     @Override
-    public void put(byte[] key, byte[] value) throws DatabaseProviderException {
+    public synchronized void put(byte[] key, byte[] value) throws DatabaseProviderException {
         map.put(new ByteArrayWrapper(key), toObjects(value));
+        changes.put(++sequence, key.clone());
+    }
+
+    @Override
+    public synchronized void rewrite(byte[] key, byte[] value) throws DatabaseProviderException {
+        map.put(new ByteArrayWrapper(key), toObjects(value));
+    }
+
+    @Override
+    public synchronized List<byte[]> multiGet(List<byte[]> keys) throws DatabaseProviderException {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    @Override
+    public synchronized void writeBatch(List<byte[]> keys, List<byte[]> values) throws DatabaseProviderException {
+        if (keys.size() != values.size()) {
+            throw new IllegalArgumentException("Every key needs exactly one value");
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            put(keys.get(i), values.get(i));
+        }
+    }
+
+    @Override
+    public void scan(EntryVisitor visitor) throws DatabaseProviderException {
+        for (Map.Entry<ByteArrayWrapper, Byte[]> entry : map.entrySet()) {
+            if (!visitor.visit(entry.getKey().data.clone(), toPrimitives(entry.getValue()))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized long latestSequence() throws DatabaseProviderException {
+        return sequence;
+    }
+
+    @Override
+    public boolean scanChanges(long since, ChangeVisitor visitor) throws DatabaseProviderException {
+        List<Map.Entry<Long, byte[]>> entries;
+        synchronized (this) {
+            if (since > sequence) {
+                return false;
+            }
+            entries = new ArrayList<>(changes.tailMap(since, false).entrySet());
+        }
+        for (Map.Entry<Long, byte[]> entry : entries) {
+            if (!visitor.visit(entry.getKey(), entry.getValue().clone())) {
+                break;
+            }
+        }
+        return true;
     }
 
     public final class ByteArrayWrapper {
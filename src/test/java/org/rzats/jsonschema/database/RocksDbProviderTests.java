@@ -0,0 +1,186 @@
+package org.rzats.jsonschema.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RocksDbProviderTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RocksDbProvider provider;
+
+    private RocksDbProvider openProvider() throws Exception {
+        return openProvider(0);
+    }
+
+    private RocksDbProvider openProvider(long changeLogRetention) throws Exception {
+        RocksDbProvider rocksDbProvider = new RocksDbProvider();
+        ReflectionTestUtils.setField(rocksDbProvider, "databasePath", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(rocksDbProvider, "blockCacheSize", 1024L * 1024L);
+        ReflectionTestUtils.setField(rocksDbProvider, "bloomFilterBits", 10);
+        ReflectionTestUtils.setField(rocksDbProvider, "writeBufferSize", 1024L * 1024L);
+        ReflectionTestUtils.setField(rocksDbProvider, "maxWriteBufferNumber", 2);
+        ReflectionTestUtils.setField(rocksDbProvider, "compactionStyle", CompactionStyle.LEVEL);
+        ReflectionTestUtils.setField(rocksDbProvider, "maxBackgroundCompactions", 1);
+        ReflectionTestUtils.setField(rocksDbProvider, "compressionType", CompressionType.LZ4_COMPRESSION);
+        ReflectionTestUtils.setField(rocksDbProvider, "changeLogRetention", changeLogRetention);
+        rocksDbProvider.open();
+        return rocksDbProvider;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> changes(long since) throws Exception {
+        List<String> changes = new ArrayList<>();
+        if (!provider.scanChanges(since, (sequence, key) -> changes.add(sequence + "=" + new String(key, StandardCharsets.UTF_8)))) {
+            return null;
+        }
+        return changes;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        provider = openProvider();
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        assertNull(provider.get(bytes("key")));
+
+        provider.put(bytes("key"), bytes("value"));
+        assertArrayEquals(bytes("value"), provider.get(bytes("key")));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        provider.put(bytes("key"), bytes("value"));
+        provider.close();
+
+        provider = openProvider();
+        assertArrayEquals(bytes("value"), provider.get(bytes("key")));
+    }
+
+    @Test(expected = DatabaseProviderException.class)
+    public void testClosed() throws Exception {
+        provider.close();
+        provider.get(bytes("key"));
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        provider.put(bytes("b"), bytes("2"));
+        provider.put(bytes("a"), bytes("1"));
+        provider.put(bytes("c"), bytes("3"));
+
+        List<String> entries = new ArrayList<>();
+        provider.scan((key, value) -> entries.add(new String(key, StandardCharsets.UTF_8) + "=" + new String(value, StandardCharsets.UTF_8)));
+        assertEquals(Arrays.asList("a=1", "b=2", "c=3"), entries);
+
+        List<String> keys = new ArrayList<>();
+        provider.scan((key, value) -> {
+            keys.add(new String(key, StandardCharsets.UTF_8));
+            return keys.size() < 2;
+        });
+        assertEquals(Arrays.asList("a", "b"), keys);
+    }
+
+    @Test
+    public void testWriteBatchAndMultiGet() throws Exception {
+        provider.writeBatch(Arrays.asList(bytes("a"), bytes("b")), Arrays.asList(bytes("1"), bytes("2")));
+
+        List<byte[]> values = provider.multiGet(Arrays.asList(bytes("b"), bytes("missing"), bytes("a")));
+        assertEquals(3, values.size());
+        assertArrayEquals(bytes("2"), values.get(0));
+        assertNull(values.get(1));
+        assertArrayEquals(bytes("1"), values.get(2));
+    }
+
+    @Test
+    public void testDefaultColumnFamilyMigration() throws Exception {
+        provider.close();
+        for (File file : folder.getRoot().listFiles()) {
+            assertTrue(file.delete());
+        }
+
+        // Earlier versions stored the entries in the default column family
+        try (Options options = new Options().setCreateIfMissing(true);
+             RocksDB database = RocksDB.open(options, folder.getRoot().getAbsolutePath())) {
+            database.put(bytes("legacy"), bytes("value"));
+        }
+
+        provider = openProvider();
+        assertArrayEquals(bytes("value"), provider.get(bytes("legacy")));
+
+        provider.close();
+        provider = openProvider();
+        assertArrayEquals(bytes("value"), provider.get(bytes("legacy")));
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        assertEquals(0, provider.latestSequence());
+        assertEquals(Arrays.asList(), changes(0));
+
+        provider.put(bytes("a"), bytes("1"));
+        provider.writeBatch(Arrays.asList(bytes("b"), bytes("a")), Arrays.asList(bytes("2"), bytes("3")));
+        assertEquals(3, provider.latestSequence());
+        assertEquals(Arrays.asList("1=a", "2=b", "3=a"), changes(0));
+        assertEquals(Arrays.asList("3=a"), changes(2));
+        assertEquals(Arrays.asList(), changes(3));
+        // Sequence numbers this database hasn't reached yet
+        assertNull(changes(4));
+
+        // Rewrites aren't changes
+        provider.rewrite(bytes("a"), bytes("3'"));
+        assertArrayEquals(bytes("3'"), provider.get(bytes("a")));
+        assertEquals(3, provider.latestSequence());
+
+        provider.close();
+        provider = openProvider();
+        assertEquals(3, provider.latestSequence());
+        provider.put(bytes("c"), bytes("4"));
+        assertEquals(Arrays.asList("3=a", "4=c"), changes(2));
+    }
+
+    @Test
+    public void testChangeLogRetention() throws Exception {
+        provider.close();
+        provider = openProvider(2);
+
+        provider.writeBatch(Arrays.asList(bytes("a"), bytes("b"), bytes("c"), bytes("d")),
+                Arrays.asList(bytes("1"), bytes("2"), bytes("3"), bytes("4")));
+        assertEquals(4, provider.latestSequence());
+        assertEquals(Arrays.asList("3=c", "4=d"), changes(2));
+        // The changes right after these have been discarded
+        assertNull(changes(0));
+        assertNull(changes(1));
+        assertFalse(provider.scanChanges(1, (sequence, key) -> true));
+    }
+}